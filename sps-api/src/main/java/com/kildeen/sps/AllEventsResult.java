@@ -0,0 +1,28 @@
+package com.kildeen.sps;
+
+import java.util.List;
+
+/**
+ * A result with one receipt for every event sent, such as a 204 response or a failed insert. It carries no receipts
+ * per event.
+ */
+public record AllEventsResult(Receipt allEvents) implements IdWithReceiptsResult {
+
+    public static final AllEventsResult ACK = new AllEventsResult(Receipt.ACK);
+    public static final AllEventsResult NACK = new AllEventsResult(Receipt.NACK);
+
+    @Override
+    public List<IdWithReceipts.IdWithReceipt> idWithReceipts() {
+        return List.of();
+    }
+
+    @Override
+    public Receipt receipt(String id) {
+        return allEvents;
+    }
+
+    @Override
+    public IdWithReceiptsResult indexed() {
+        return this;
+    }
+}
@@ -9,4 +9,25 @@ public interface IdWithReceiptsResult {
     }
 
     List<IdWithReceipts.IdWithReceipt> idWithReceipts();
+
+    /**
+     * The receipt of a single event, null when the result has none for it. Results holding many receipts should
+     * index them, this is called once for every event sent.
+     */
+    default Receipt receipt(String id) {
+        for (IdWithReceipts.IdWithReceipt idWithReceipt : idWithReceipts()) {
+            if (idWithReceipt.id().equals(id)) {
+                return idWithReceipt.receipt();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This result in a form that answers {@link #receipt(String)} without a scan, results that already do return
+     * themselves.
+     */
+    default IdWithReceiptsResult indexed() {
+        return new IndexedReceipts(idWithReceipts());
+    }
 }
@@ -0,0 +1,37 @@
+package com.kildeen.sps;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receipts indexed by event id, looking up the receipt of an event does not scan the list.
+ */
+public final class IndexedReceipts implements IdWithReceiptsResult {
+
+    private final List<IdWithReceipts.IdWithReceipt> idWithReceipts;
+    private final Map<String, Receipt> byId;
+
+    public IndexedReceipts(List<IdWithReceipts.IdWithReceipt> idWithReceipts) {
+        this.idWithReceipts = List.copyOf(idWithReceipts);
+        this.byId = HashMap.newHashMap(idWithReceipts.size());
+        for (IdWithReceipts.IdWithReceipt idWithReceipt : idWithReceipts) {
+            byId.put(idWithReceipt.id(), idWithReceipt.receipt());
+        }
+    }
+
+    @Override
+    public List<IdWithReceipts.IdWithReceipt> idWithReceipts() {
+        return idWithReceipts;
+    }
+
+    @Override
+    public Receipt receipt(String id) {
+        return byId.get(id);
+    }
+
+    @Override
+    public IdWithReceiptsResult indexed() {
+        return this;
+    }
+}
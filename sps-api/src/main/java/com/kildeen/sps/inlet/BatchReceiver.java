@@ -0,0 +1,28 @@
+package com.kildeen.sps.inlet;
+
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+
+import java.util.List;
+
+/**
+ * A {@link Receiver} that gets all events of its type in a received batch at once, for receivers that write
+ * downstream in bulk. Register it like any other receiver.
+ */
+public interface BatchReceiver extends Receiver {
+
+    /**
+     * @param spsEvents the events of this receiver's type, already deduplicated
+     * @return one receipt per event in the same order, ACK when handled and NACK to have it redelivered
+     */
+    List<Receipt> receive(SpsEvents spsEvents);
+
+    @Override
+    default void receive(SpsEvent spsEvent) {
+        Receipt receipt = receive(new SpsEvents(eventType(), List.of(spsEvent))).get(0);
+        if (receipt != Receipt.ACK) {
+            throw new IllegalStateException("Batch receiver returned " + receipt + " for " + spsEvent.id());
+        }
+    }
+}
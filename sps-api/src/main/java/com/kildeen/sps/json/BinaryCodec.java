@@ -0,0 +1,32 @@
+package com.kildeen.sps.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * A binary encoding of the objects {@link Json} writes, for transports where the receiver can be asked to accept it.
+ * Receivers that do not are sent JSON.
+ */
+public interface BinaryCodec {
+
+    /**
+     * The media type sent as Content-Type, receivers accept the encoding by consuming it.
+     */
+    String contentType();
+
+    <T> T readValue(byte[] bytes, Class<T> clazz);
+
+    byte[] writeValueAsBytes(Object object);
+
+    /**
+     * Writes the encoded object to out, implementations should stream it rather than build it in memory first.
+     */
+    default void write(Object object, OutputStream out) {
+        try {
+            out.write(writeValueAsBytes(object));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,12 +1,34 @@
 package com.kildeen.sps.json;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 
 public interface Json {
 
     <T> T readValue(String json, Class<T> clazz);
 
+    /**
+     * Reads JSON encoded as UTF-8, implementations should parse the bytes directly rather than decode a String first.
+     */
+    default <T> T readValue(byte[] json, Class<T> clazz) {
+        return readValue(new String(json, StandardCharsets.UTF_8), clazz);
+    }
+
     byte[] writeValueAsBytes(Object object);
 
     String write(Object object);
 
+    /**
+     * Writes the object as JSON to out, implementations should stream it rather than build it in memory first.
+     */
+    default void write(Object object, OutputStream out) {
+        try {
+            out.write(writeValueAsBytes(object));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
 }
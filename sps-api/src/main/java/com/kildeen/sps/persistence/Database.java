@@ -5,11 +5,17 @@ import com.kildeen.sps.Schemas;
 import com.kildeen.sps.SpsEvent;
 import com.kildeen.sps.publish.Subscriptions;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface Database {
     void addSubscription(Subscriptions.Subscription subscription);
@@ -22,6 +28,19 @@ public interface Database {
 
     void ackOrNack(SpsEvent event, Receipt receipt);
 
+    /**
+     * Record a receipt without waiting for it to be stored, implementations may buffer and write receipts in
+     * batches. The returned future completes once the receipt is durable, wait for it before responding.
+     */
+    default CompletableFuture<Void> ackOrNackAsync(SpsEvent event, Receipt receipt) {
+        try {
+            ackOrNack(event, receipt);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     Subscriptions subscriptions(Set<String> eventTypes);
 
     Config fetchConfig();
@@ -42,6 +61,19 @@ public interface Database {
         return isAck(baseId + "_" + subscriber);
     }
 
+    /**
+     * The ids among the given ones that have been acked, resolving a whole batch with one lookup.
+     */
+    default Set<String> ackedIds(Collection<String> ids) {
+        Set<String> acked = new HashSet<>();
+        for (String id : ids) {
+            if (isAck(id)) {
+                acked.add(id);
+            }
+        }
+        return acked;
+    }
+
     long nackCountByTypeSince(String eventType, Instant since);
 
     void tripCircuit(String subId, String eventType);
@@ -54,6 +86,67 @@ public interface Database {
 
     boolean takeLeader(UUID id);
 
+    // Subscription change signals for caches in front of subscriptions()
+
+    /**
+     * True when listeners registered with {@link #onSubscriptionsChanged} are called on subscription changes.
+     */
+    default boolean pushesSubscriptionChanges() {
+        return false;
+    }
+
+    /**
+     * Register a listener called with the event type of each subscription change, or with null when any
+     * subscription may have changed. Empty when this database cannot push changes, callers then
+     * poll {@link #subscriptionsVersion()} instead.
+     */
+    default Optional<ListenerRegistration> onSubscriptionsChanged(Consumer<String> listener) {
+        return Optional.empty();
+    }
+
+    /**
+     * Counter bumped on every subscription change, cheap enough to read before each cached lookup.
+     * Negative when not supported.
+     */
+    default long subscriptionsVersion() {
+        return -1;
+    }
+
+    // Durable retries for RetentionType.PERSISTENT
+
+    /**
+     * True when this database stores retries, publishers then keep persistent retries here instead of in memory.
+     */
+    default boolean storesRetries() {
+        return false;
+    }
+
+    /**
+     * Store a retry. Skipped when a retry for the same event and subscriber is already pending, unless that one
+     * is claimed, then it is replaced and its claim dropped.
+     *
+     * @return false when skipped, the pending retry sends the events instead, or when this database does not store
+     * retries
+     */
+    default boolean saveRetry(PendingRetry retry) {
+        return false;
+    }
+
+    /**
+     * Claim up to limit due retries, earliest first. A claimed retry becomes due again when the lease expires,
+     * so a retry claimed by a publisher that stops is picked up by another one.
+     */
+    default List<PendingRetry> claimDueRetries(int limit, Duration lease) {
+        return List.of();
+    }
+
+    /**
+     * Delete claimed retries that are done, retries saved again since they were claimed are kept.
+     */
+    default void completeRetries(List<PendingRetry> retries) {
+        // Default no-op
+    }
+
     // Transport queue methods for database-based delivery fallback
 
     /**
@@ -63,6 +156,25 @@ public interface Database {
         // Default no-op for backwards compatibility
     }
 
+    /**
+     * Insert several events into the transport queue at once, events already queued for their subscriber are
+     * skipped.
+     */
+    default void insertTransportEvents(List<TransportEvent> events) {
+        for (TransportEvent event : events) {
+            insertTransportEvent(event.eventId(), event.eventType(), event.subscriberId(), event.payload());
+        }
+    }
+
+    /**
+     * Register a listener called when entries are queued for the subscriber, or when entries may have been queued
+     * without the listener being told. Empty when this database cannot push, pollers then only poll on their
+     * interval.
+     */
+    default Optional<ListenerRegistration> onTransportQueued(String subscriberId, Runnable listener) {
+        return Optional.empty();
+    }
+
     /**
      * Poll pending events from the transport queue for a subscriber.
      */
@@ -70,6 +182,25 @@ public interface Database {
         return List.of();
     }
 
+    /**
+     * Claim up to limit entries for a subscriber so that concurrent pollers never receive the same entry. A claim
+     * expires after the lease, its entry can then be claimed again, so process and mark entries within the lease.
+     * Expired claims are claimed again before newer pending entries.
+     * Defaults to {@link #pollTransportQueue(String, int)} for databases that cannot claim, run a single poller
+     * per subscriber against those.
+     */
+    default List<TransportQueueEntry> claimTransportQueue(String subscriberId, int limit, Duration lease) {
+        return pollTransportQueue(subscriberId, limit);
+    }
+
+    /**
+     * Return a claimed entry to pending so the next poll can claim it without waiting for the lease to expire.
+     * Does nothing once the entry's claim has expired and another poller claimed it.
+     */
+    default void releaseTransportClaim(TransportQueueEntry claimed) {
+        // Default no-op
+    }
+
     /**
      * Mark a transport queue entry as processed.
      */
@@ -77,6 +208,23 @@ public interface Database {
         // Default no-op
     }
 
+    /**
+     * Depth and age of the subscriber's unprocessed transport queue entries, for monitoring.
+     */
+    default TransportQueueStats transportQueueStats(String subscriberId) {
+        return TransportQueueStats.EMPTY;
+    }
+
+    /**
+     * Mark several transport queue entries as processed at once. Claimed entries are only marked while their claim
+     * is still held, see {@link TransportQueueEntry#claimId()}.
+     */
+    default void markTransportProcessed(List<TransportQueueEntry> entries) {
+        for (TransportQueueEntry entry : entries) {
+            markTransportProcessed(entry.eventId(), entry.subscriberId());
+        }
+    }
+
     /**
      * Delete processed entries older than the given instant.
      */
@@ -0,0 +1,11 @@
+package com.kildeen.sps.persistence;
+
+/**
+ * A listener registered with the database, closing it removes the listener.
+ */
+@FunctionalInterface
+public interface ListenerRegistration extends AutoCloseable {
+
+    @Override
+    void close();
+}
@@ -0,0 +1,29 @@
+package com.kildeen.sps.persistence;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A retry of a published fork kept in the database, so it survives publisher restarts and can be picked up by
+ * any publisher instance.
+ *
+ * @param eventId retry key of the forked events, one pending retry is kept per key and subscriber
+ * @param payload the forked events as serialized {@code BasicSpsEvents}
+ * @param retries attempts made so far
+ * @param deliveryType delivery type to retry with
+ * @param createdAt when the events were first published, used for abandonment
+ * @param dueAt when the retry should be sent
+ * @param claimId set on retries returned by a claim, null otherwise
+ */
+public record PendingRetry(
+        String eventId,
+        String eventType,
+        String subscriberId,
+        String payload,
+        int retries,
+        String deliveryType,
+        Instant createdAt,
+        Instant dueAt,
+        UUID claimId
+) {
+}
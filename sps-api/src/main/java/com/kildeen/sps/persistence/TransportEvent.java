@@ -0,0 +1,12 @@
+package com.kildeen.sps.persistence;
+
+/**
+ * An event to insert into the transport queue for one subscriber.
+ */
+public record TransportEvent(
+        String eventId,
+        String eventType,
+        String subscriberId,
+        String payload
+) {
+}
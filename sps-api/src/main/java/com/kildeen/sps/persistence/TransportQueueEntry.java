@@ -1,10 +1,14 @@
 package com.kildeen.sps.persistence;
 
 import java.time.Instant;
+import java.util.UUID;
 
 /**
  * Represents an entry in the transport queue for database-based event delivery.
  * Used when HTTP delivery fails and events are queued for polling.
+ *
+ * @param claimId set on entries returned by a claim, null otherwise. Releasing or marking a claimed entry only
+ *                succeeds while the claim is still held, not after its lease expired and another poller claimed it
  */
 public record TransportQueueEntry(
         long id,
@@ -13,9 +17,16 @@ public record TransportQueueEntry(
         String subscriberId,
         String payload,
         String status,
-        Instant createdAt
+        Instant createdAt,
+        UUID claimId
 ) {
     public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_CLAIMED = "CLAIMED";
     public static final String STATUS_PROCESSED = "PROCESSED";
     public static final String STATUS_FAILED = "FAILED";
+
+    public TransportQueueEntry(long id, String eventId, String eventType, String subscriberId, String payload,
+                               String status, Instant createdAt) {
+        this(id, eventId, eventType, subscriberId, payload, status, createdAt, null);
+    }
 }
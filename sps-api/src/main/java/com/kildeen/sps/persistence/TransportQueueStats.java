@@ -0,0 +1,25 @@
+package com.kildeen.sps.persistence;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Backlog of a subscriber's transport queue, entries not yet processed whether claimed or not.
+ *
+ * @param depth number of unprocessed entries
+ * @param oldestQueuedAt when the oldest unprocessed entry was queued, null when there is none
+ */
+public record TransportQueueStats(long depth, Instant oldestQueuedAt) {
+
+    public static final TransportQueueStats EMPTY = new TransportQueueStats(0, null);
+
+    /**
+     * How long the oldest unprocessed entry has been waiting, zero when the queue is empty.
+     */
+    public Duration lag(Instant now) {
+        if (oldestQueuedAt == null || oldestQueuedAt.isAfter(now)) {
+            return Duration.ZERO;
+        }
+        return Duration.between(oldestQueuedAt, now);
+    }
+}
@@ -1,9 +1,13 @@
 package com.kildeen.sps.publish;
 
 import com.kildeen.sps.Contract;
+import com.kildeen.sps.IdWithReceipts;
 import com.kildeen.sps.SpsEvent;
 
+import java.time.Duration;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 @Contract
 public interface Publish {
@@ -16,6 +20,34 @@ public interface Publish {
      */
     PublishResult publish(Collection<SpsEvent> events);
 
+    /**
+     * Publishes like {@link #publish(Collection)} but reports what happened to each event. Blocks while too many
+     * events are in flight, so a producer cannot outrun delivery.
+     *
+     * @param events that all share the same type()
+     * @return completes with one receipt per event and subscriber once each is final, the receipt ids are the
+     * event ids suffixed with the subscriber id. Empty when the events had no subscribers. Implementations that
+     * predate it return a future failed with UnsupportedOperationException
+     */
+    default CompletableFuture<IdWithReceipts> publishAsync(Collection<SpsEvent> events) {
+        return CompletableFuture.failedFuture(
+                new UnsupportedOperationException(getClass().getName() + " does not report receipts"));
+    }
+
+    /**
+     * A subscriber that publishes a stream of events, of any types, as it arrives. It requests batchSize events at a
+     * time and publishes them per type once batchSize have arrived or maxDelay after the first, requesting more
+     * only as batches are handed off.
+     *
+     * @param batchSize events requested and published at once
+     * @param maxDelay how long a partial batch waits for more events
+     * @return a subscriber for one stream
+     * @throws UnsupportedOperationException from implementations that predate it
+     */
+    default Flow.Subscriber<SpsEvent> subscriber(int batchSize, Duration maxDelay) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not publish streams");
+    }
+
     enum PublishResult {
         SCHEMA_GEN_PUBLISH, PUBLISH
     }
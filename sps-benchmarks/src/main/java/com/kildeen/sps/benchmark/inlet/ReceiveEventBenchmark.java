@@ -0,0 +1,91 @@
+package com.kildeen.sps.benchmark.inlet;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.inlet.InletService;
+import com.kildeen.sps.inlet.Receiver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link InletService#receive} of single events against {@link EmbeddedDatabase}: the dedup lookup, receiver
+ * dispatch and ack write for new events, and the dedup short circuit for redelivered ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiveEventBenchmark {
+
+    private static final String TYPE = "bench_01";
+    private static final int DUPLICATES = 1024;
+
+    private final Map<String, Object> data = Map.of("key", "value", "other", 42);
+    private EmbeddedDatabase database;
+    private InletService inlet;
+    private SpsEvents[] duplicates;
+    private long sequence;
+    private int duplicateIndex;
+    private long received;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        database = EmbeddedDatabase.get();
+        database.clear();
+
+        inlet = InletService.newBuilder()
+                .withSubId("sub")
+                .withDatabase(database)
+                .withReceivers(List.of(new Receiver() {
+                    @Override
+                    public void receive(SpsEvent spsEvent) {
+                        received++;
+                    }
+
+                    @Override
+                    public String eventType() {
+                        return TYPE;
+                    }
+                }))
+                .build();
+
+        duplicates = new SpsEvents[DUPLICATES];
+        for (int i = 0; i < DUPLICATES; i++) {
+            SpsEvent duplicate = new BasicSpsEvents.BasicSpsEvent(TYPE, "dup" + i + "_sub", data);
+            database.ackOrNack(duplicate, Receipt.ACK);
+            duplicates[i] = new SpsEvents(TYPE, List.of(duplicate));
+        }
+    }
+
+    @Benchmark
+    public void receiveNew(Blackhole blackhole) {
+        blackhole.consume(inlet.receive(new SpsEvents(TYPE,
+                List.of(new BasicSpsEvents.BasicSpsEvent(TYPE, "id" + sequence++ + "_sub", data)))));
+        blackhole.consume(received);
+    }
+
+    @Benchmark
+    public void receiveDuplicate(Blackhole blackhole) {
+        blackhole.consume(inlet.receive(duplicates[duplicateIndex++ & (DUPLICATES - 1)]));
+        blackhole.consume(received);
+    }
+}
@@ -0,0 +1,82 @@
+package com.kildeen.sps.benchmark.json;
+
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.json.JacksonJson;
+import com.kildeen.sps.json.Json;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JacksonJson} serialization of {@link SpsEvents} as done by the publisher clients and
+ * deserialization into {@link BasicSpsEvents} as done by the inlet and transport queue poller.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JacksonJsonBenchmark {
+
+    @Param({"1", "100", "1000"})
+    int events;
+
+    @Param({"5", "30"})
+    int fields;
+
+    private final Json json = new JacksonJson();
+    private SpsEvents spsEvents;
+    private String serialized;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<SpsEvent> list = new ArrayList<>(events);
+        for (int i = 0; i < events; i++) {
+            Map<String, Object> data = new HashMap<>();
+            for (int f = 0; f < fields; f++) {
+                data.put("field" + f, f % 2 == 0 ? "value" + f : f);
+            }
+            list.add(new BasicSpsEvents.BasicSpsEvent("bench_01", "id" + i + "_sub", data));
+        }
+        spsEvents = new SpsEvents("bench_01", list);
+        serialized = json.write(spsEvents);
+    }
+
+    @Benchmark
+    public String write() {
+        return json.write(spsEvents);
+    }
+
+    @Benchmark
+    public byte[] writeBytes() {
+        return json.writeValueAsBytes(spsEvents);
+    }
+
+    @Benchmark
+    public BasicSpsEvents read() {
+        return json.readValue(serialized, BasicSpsEvents.class);
+    }
+
+    @Benchmark
+    public SpsEvents roundTrip() {
+        return json.readValue(json.write(spsEvents), BasicSpsEvents.class).get();
+    }
+}
@@ -0,0 +1,82 @@
+package com.kildeen.sps.benchmark.publish;
+
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.publish.EventFork;
+import com.kildeen.sps.publish.Subscriptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out cost of {@link EventFork#fork()}: every event is copied once per subscription.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventForkBenchmark {
+
+    private static final int FIELDS = 20;
+
+    @Param({"1", "40", "1000"})
+    int subscriptions;
+
+    @Param({"1", "100", "10000"})
+    int events;
+
+    /**
+     * Share of subscriptions that rename every field through a subSchema, in percent.
+     */
+    @Param({"0", "50", "100"})
+    int renamedPercent;
+
+    private List<SpsEvent> spsEvents;
+    private List<Subscriptions.Subscription> subs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, Object> data = new HashMap<>();
+        Map<String, String> renames = new HashMap<>();
+        for (int i = 0; i < FIELDS; i++) {
+            data.put("field" + i, "value" + i);
+            renames.put("field" + i, "renamed" + i);
+        }
+
+        spsEvents = new ArrayList<>(events);
+        for (int i = 0; i < events; i++) {
+            spsEvents.add(new BasicSpsEvents.BasicSpsEvent("bench_01", "id" + i, data));
+        }
+
+        int renamed = subscriptions * renamedPercent / 100;
+        subs = new ArrayList<>(subscriptions);
+        for (int i = 0; i < subscriptions; i++) {
+            subs.add(new Subscriptions.Subscription(
+                    new Subscriptions.Subscription.Subscriber("sub" + i, "http://sub" + i),
+                    "bench_01",
+                    i < renamed ? renames : Map.of()));
+        }
+    }
+
+    @Benchmark
+    public EventFork.ForkedEvents fork() {
+        return new EventFork(spsEvents, subs).fork();
+    }
+}
@@ -0,0 +1,110 @@
+package com.kildeen.sps.benchmark.publish;
+
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.publish.EventFork;
+import com.kildeen.sps.publish.PublishableEvent;
+import com.kildeen.sps.publish.RetryPolicies;
+import com.kildeen.sps.publish.RetryQueue;
+import com.kildeen.sps.publish.Subscriptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link RetryQueue#save} and {@link RetryQueue#next} under contention, producers and consumers
+ * hammering the same queue the way the publisher retry executor and scheduler do.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RetryQueueBenchmark {
+
+    private static final RetryPolicies.RetryPolicy READY_POLICY = RetryPolicies.RetryPolicy.newBuilder()
+            .withMaxRetries(3)
+            .withWaitInMs(0)
+            .build();
+
+    private static final RetryPolicies.RetryPolicy WAITING_POLICY = RetryPolicies.RetryPolicy.newBuilder()
+            .withMaxRetries(3)
+            .withWaitInMs(60_000)
+            .build();
+
+    // Waiting saves cycle through this many ids, later saves are rejected as duplicates and the queue stays bounded
+    private static final int WAITING_IDS = 1 << 16;
+
+    private final AtomicLong ids = new AtomicLong();
+    private Subscriptions.Subscription subscription;
+    private RetryQueue retryQueue;
+
+    /**
+     * A fresh queue per iteration, so waiting events saved by one iteration do not slow down the next.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        subscription = new Subscriptions.Subscription(
+                new Subscriptions.Subscription.Subscriber("sub", "http://sub"), "bench_01", Map.of());
+        retryQueue = new RetryQueue();
+    }
+
+    @Benchmark
+    @Group("ready")
+    @GroupThreads(2)
+    public boolean readySave() {
+        return retryQueue.save(nextFork(), READY_POLICY);
+    }
+
+    @Benchmark
+    @Group("ready")
+    @GroupThreads(2)
+    public PublishableEvent readyNext() {
+        return retryQueue.next();
+    }
+
+    /**
+     * Nothing is ever due, so every {@code next()} only looks at the head of the queue. Once every id is waiting,
+     * saves take the duplicate check, the way a publisher retrying the same forks does.
+     */
+    @Benchmark
+    @Group("waiting")
+    @GroupThreads(2)
+    public boolean waitingSave() {
+        return retryQueue.save(fork(ids.incrementAndGet() % WAITING_IDS), WAITING_POLICY);
+    }
+
+    @Benchmark
+    @Group("waiting")
+    @GroupThreads(2)
+    public PublishableEvent waitingNext() {
+        return retryQueue.next();
+    }
+
+    private EventFork.ForkedEvents.Fork nextFork() {
+        return fork(ids.incrementAndGet());
+    }
+
+    private EventFork.ForkedEvents.Fork fork(long id) {
+        SpsEvent event = new EventFork.ForkedEvents.Fork.ForkSpsEvent("bench_01",
+                "id" + id + "_sub", Map.of("key", "value"));
+        return new EventFork.ForkedEvents.Fork(subscription, List.of(event), subscription.deliveryType(),
+                Instant.now());
+    }
+}
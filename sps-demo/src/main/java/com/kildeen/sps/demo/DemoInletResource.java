@@ -3,6 +3,8 @@ package com.kildeen.sps.demo;
 import com.kildeen.sps.BasicSpsEvents;
 import com.kildeen.sps.IdWithReceipts;
 import com.kildeen.sps.inlet.Inlet;
+import com.kildeen.sps.json.BinaryCodec;
+import com.kildeen.sps.json.SmileCodec;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.POST;
@@ -28,6 +30,9 @@ public class DemoInletResource {
     @Inject
     Inlet inletService;
 
+    @Inject
+    BinaryCodec codec;
+
     @POST
     @Path("/{eventType}")
     public Response receiveEvent(@PathParam("eventType") String eventType, BasicSpsEvents events) {
@@ -37,4 +42,18 @@ public class DemoInletResource {
 
         return Response.ok(receipts).build();
     }
+
+    @POST
+    @Path("/{eventType}")
+    @Consumes(SmileCodec.CONTENT_TYPE)
+    public Response receiveBinaryEvent(@PathParam("eventType") String eventType, byte[] body) {
+        BasicSpsEvents events;
+        try {
+            events = codec.readValue(body, BasicSpsEvents.class);
+        } catch (Exception e) {
+            LOG.warn("Could not decode event(s) of type: {}", eventType, e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return receiveEvent(eventType, events);
+    }
 }
@@ -4,6 +4,8 @@ import com.kildeen.sps.StandardLibs;
 import com.kildeen.sps.inlet.Inlet;
 import com.kildeen.sps.inlet.InletService;
 import com.kildeen.sps.inlet.Receiver;
+import com.kildeen.sps.json.BinaryCodec;
+import com.kildeen.sps.json.SmileCodec;
 import com.kildeen.sps.persistence.Database;
 import com.kildeen.sps.persistence.DatabaseProvider;
 import com.kildeen.sps.publish.Publish;
@@ -105,4 +107,10 @@ public class SpsConfiguration {
                 .withTransportPolling(true)  // Enable database transport fallback polling
                 .build();
     }
+
+    @Produces
+    @Singleton
+    public BinaryCodec binaryCodec() {
+        return new SmileCodec();
+    }
 }
@@ -4,6 +4,8 @@ import com.kildeen.sps.Receipt;
 import com.kildeen.sps.SpsEvent;
 import com.kildeen.sps.persistence.Database;
 
+import java.util.concurrent.CompletableFuture;
+
 public class AckOrNackEventsImpl implements AckOrNackEvents {
 
     private final Database database;
@@ -21,4 +23,14 @@ public class AckOrNackEventsImpl implements AckOrNackEvents {
     public void nack(SpsEvent event) {
         database.ackOrNack(event, Receipt.NACK);
     }
+
+    @Override
+    public CompletableFuture<Void> ackAsync(SpsEvent event) {
+        return database.ackOrNackAsync(event, Receipt.ACK);
+    }
+
+    @Override
+    public CompletableFuture<Void> nackAsync(SpsEvent event) {
+        return database.ackOrNackAsync(event, Receipt.NACK);
+    }
 }
@@ -2,15 +2,22 @@ package com.kildeen.sps.inlet;
 
 import com.kildeen.sps.ConfigurationException;
 import com.kildeen.sps.IdWithReceipts;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
 import com.kildeen.sps.SpsEventType;
 import com.kildeen.sps.SpsEvents;
 import com.kildeen.sps.persistence.Database;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
 
 /**
  * Service for receiving and processing incoming events.
@@ -24,10 +31,14 @@ public class InletService implements Inlet {
 
     private final ReceiveEvent receiveEvent;
     private final TransportQueuePoller transportQueuePoller;
+    private final DedupCache dedupCache;
+    private final ExecutorService ownedDispatchExecutor;
 
     private InletService(Builder builder) {
         receiveEvent = builder.receiveEvent;
         transportQueuePoller = builder.transportQueuePoller;
+        dedupCache = builder.dedupCache;
+        ownedDispatchExecutor = builder.ownedDispatchExecutor;
     }
 
     public static Builder newBuilder() {
@@ -36,20 +47,27 @@ public class InletService implements Inlet {
 
     @Override
     public IdWithReceipts receive(SpsEvents events) {
-        List<IdWithReceipts.IdWithReceipt> result = new ArrayList<>();
-        events.spsEvents().forEach(e -> result.add(new IdWithReceipts.IdWithReceipt(e.id(), e.type(),
-                receiveEvent.receive(e),
-                Instant.now())));
+        List<SpsEvent> spsEvents = events.spsEvents();
+        List<Receipt> receipts = receiveEvent.receive(spsEvents);
+        List<IdWithReceipts.IdWithReceipt> result = new ArrayList<>(spsEvents.size());
+        Instant now = Instant.now();
+        for (int i = 0; i < spsEvents.size(); i++) {
+            SpsEvent e = spsEvents.get(i);
+            result.add(new IdWithReceipts.IdWithReceipt(e.id(), e.type(), receipts.get(i), now));
+        }
         return new IdWithReceipts(result);
     }
 
     /**
-     * Stops the transport queue poller if running.
+     * Stops the transport queue poller if running and the default parallel dispatch executor.
      */
     public void stop() {
         if (transportQueuePoller != null) {
             transportQueuePoller.stop();
         }
+        if (ownedDispatchExecutor != null) {
+            ownedDispatchExecutor.shutdown();
+        }
     }
 
     /**
@@ -59,6 +77,13 @@ public class InletService implements Inlet {
         return transportQueuePoller;
     }
 
+    /**
+     * Returns the dedup cache for monitoring its hit and miss counters, null when not configured.
+     */
+    public DedupCache getDedupCache() {
+        return dedupCache;
+    }
+
     public static final class Builder {
         private Collection<Receiver> spsReceivers;
         private Database database;
@@ -66,6 +91,14 @@ public class InletService implements Inlet {
         private TransportQueuePoller transportQueuePoller;
         private String subId;
         private boolean enableTransportPolling = false;
+        private int transportConsumers = 1;
+        private DedupCache dedupCache;
+        private int dedupRecentIds;
+        private int dedupIdsPerWindow;
+        private Duration dedupWindow;
+        private Function<? super SpsEvent, ?> partitionKey;
+        private Executor dispatchExecutor;
+        private ExecutorService ownedDispatchExecutor;
 
         private Builder() {
         }
@@ -94,6 +127,50 @@ public class InletService implements Inlet {
             return this;
         }
 
+        /**
+         * Number of threads claiming transport queue entries concurrently. Entries are claimed with a lease, so
+         * this instance can also share the queue with other instances of the same subscriber.
+         * Default is 1.
+         */
+        public Builder withTransportConsumers(int consumers) {
+            this.transportConsumers = consumers;
+            return this;
+        }
+
+        /**
+         * Answer deduplication checks from memory where possible, see {@link DedupCache} for when a cached
+         * "not seen" answer can be trusted.
+         * @param recentIds how many recently acked ids to keep
+         * @param idsPerWindow expected acks per window, sizes the bloom filter
+         * @param window how long acked ids are at least remembered
+         */
+        public Builder withDedupCache(int recentIds, int idsPerWindow, Duration window) {
+            this.dedupRecentIds = recentIds;
+            this.dedupIdsPerWindow = idsPerWindow;
+            this.dedupWindow = window;
+            return this;
+        }
+
+        /**
+         * Dispatch the events of a received batch concurrently instead of one after the other on the calling
+         * thread. Events with equal partition keys are still dispatched in order, so receivers only need to be
+         * thread safe across partitions. Uses a virtual thread per partition unless
+         * {@link #withDispatchExecutor(Executor)} is set.
+         * @param partitionKey extracts the ordering key from an event, for example an entity id in its data
+         */
+        public Builder withParallelDispatch(Function<? super SpsEvent, ?> partitionKey) {
+            this.partitionKey = partitionKey;
+            return this;
+        }
+
+        /**
+         * Executor for parallel dispatch, the caller owns it and shuts it down.
+         */
+        public Builder withDispatchExecutor(Executor executor) {
+            this.dispatchExecutor = executor;
+            return this;
+        }
+
         public InletService build() {
             validateConfiguration();
 
@@ -103,13 +180,28 @@ public class InletService implements Inlet {
             Map<String, Receiver> mapped = Receiver.map(spsReceivers.stream());
             mapped.put(SpsEventType.healthcheck_01.toString(), healthcheckReceiver);
 
+            if (dedupWindow != null) {
+                dedupCache = new DedupCache(dedupRecentIds, dedupIdsPerWindow, dedupWindow);
+            }
+
+            ParallelDispatch parallelDispatch = null;
+            if (partitionKey != null) {
+                if (dispatchExecutor == null) {
+                    ownedDispatchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+                    dispatchExecutor = ownedDispatchExecutor;
+                }
+                parallelDispatch = new ParallelDispatch(dispatchExecutor, partitionKey);
+            }
+
             receiveEvent = new ReceiveEvent(mapped,
                     new AckOrNackEvent(new RetryQueue(), new AckOrNackEventsImpl(database)),
-                    database);
+                    database, dedupCache, parallelDispatch);
 
             // Create and start transport queue poller for database fallback
             if (enableTransportPolling) {
-                transportQueuePoller = new TransportQueuePoller(database, subId, new ArrayList<>(spsReceivers));
+                transportQueuePoller = new TransportQueuePoller(database, subId, new ArrayList<>(spsReceivers),
+                        TransportQueuePoller.DEFAULT_POLL_INTERVAL_MS, TransportQueuePoller.DEFAULT_BATCH_SIZE,
+                        transportConsumers, TransportQueuePoller.DEFAULT_LEASE);
                 transportQueuePoller.start();
             }
 
@@ -139,6 +231,27 @@ public class InletService implements Inlet {
                         "Call .withReceivers(List.of(yourReceiver)) on the builder"
                 );
             }
+            if (dispatchExecutor != null && partitionKey == null) {
+                throw new ConfigurationException(
+                        "partitionKey",
+                        "A dispatch executor only applies to parallel dispatch",
+                        "Call .withParallelDispatch(partitionKey) on the builder"
+                );
+            }
+            if (transportConsumers < 1) {
+                throw new ConfigurationException(
+                        "transportConsumers",
+                        "Transport polling needs at least one consumer",
+                        "Call .withTransportConsumers(1) on the builder"
+                );
+            }
+            if (dedupWindow != null && (dedupRecentIds < 1 || dedupIdsPerWindow < 1 || !dedupWindow.isPositive())) {
+                throw new ConfigurationException(
+                        "dedupCache",
+                        "Dedup cache needs room for ids and a positive window",
+                        "Call .withDedupCache(10_000, 100_000, Duration.ofMinutes(10))"
+                );
+            }
         }
     }
 }
@@ -1,37 +1,66 @@
 package com.kildeen.sps.inlet;
 
 import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.Receipt;
 import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
 import com.kildeen.sps.json.JsonProvider;
 import com.kildeen.sps.persistence.Database;
+import com.kildeen.sps.persistence.ListenerRegistration;
 import com.kildeen.sps.persistence.TransportQueueEntry;
+import com.kildeen.sps.persistence.TransportQueueStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Polls the transport queue for events when database-based delivery is used.
  * This handles the receiving side of the transport fallback mechanism.
+ *
+ * <p>Entries are claimed with a lease rather than just read, so several consumer threads, and several instances
+ * of the same subscriber, can poll one queue without delivering an entry twice. Entries that fail are released
+ * for the next poll, entries of a consumer that dies are claimed again once their lease expires.
+ *
+ * <p>Consumers poll again right away after a full batch and double their batch size each time, up to the
+ * maximum, so a backlog is drained in growing batches. Otherwise they halve it again and wait for the database to
+ * report newly queued entries, see {@link Database#onTransportQueued(String, Runnable)}. Each empty or failed poll
+ * doubles the wait up to the poll interval, which is only a safety net for missed notifications and expired leases.
  */
 public class TransportQueuePoller {
 
     private static final Logger LOG = LoggerFactory.getLogger(TransportQueuePoller.class);
-    private static final int DEFAULT_POLL_INTERVAL_MS = 1000;
-    private static final int DEFAULT_BATCH_SIZE = 100;
+    static final int DEFAULT_POLL_INTERVAL_MS = 1000;
+    static final int DEFAULT_BATCH_SIZE = 100;
+    static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+    private static final long MIN_IDLE_DELAY_MS = 10;
+    static final Duration DEFAULT_LEASE = Duration.ofSeconds(30);
 
     private final Database database;
     private final String subscriberId;
     private final Map<String, Receiver> receiversByType;
-    private final ScheduledExecutorService scheduler;
+    private final ExecutorService scheduler;
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final int pollIntervalMs;
     private final int batchSize;
+    private final int maxBatchSize;
+    private final int consumers;
+    private final Duration lease;
+    private final Object wakeup = new Object();
+    private long wakeups; // guarded by wakeup
+    private volatile ListenerRegistration queuedListener;
+    private volatile int currentBatchSize;
 
     public TransportQueuePoller(Database database, String subscriberId, List<Receiver> receivers) {
         this(database, subscriberId, receivers, DEFAULT_POLL_INTERVAL_MS, DEFAULT_BATCH_SIZE);
@@ -39,17 +68,40 @@ public class TransportQueuePoller {
 
     public TransportQueuePoller(Database database, String subscriberId, List<Receiver> receivers,
                                  int pollIntervalMs, int batchSize) {
+        this(database, subscriberId, receivers, pollIntervalMs, batchSize, 1, DEFAULT_LEASE);
+    }
+
+    public TransportQueuePoller(Database database, String subscriberId, List<Receiver> receivers,
+                                 int pollIntervalMs, int batchSize, int consumers, Duration lease) {
+        this(database, subscriberId, receivers, pollIntervalMs, batchSize,
+                Math.max(batchSize, DEFAULT_MAX_BATCH_SIZE), consumers, lease);
+    }
+
+    /**
+     * @param batchSize entries claimed by the first poll and after the queue has been drained
+     * @param maxBatchSize entries claimed at most while draining a backlog
+     * @param consumers threads claiming and processing entries concurrently
+     * @param lease how long a claimed entry is reserved for this poller, longer than processing a batch takes
+     */
+    public TransportQueuePoller(Database database, String subscriberId, List<Receiver> receivers,
+                                 int pollIntervalMs, int batchSize, int maxBatchSize, int consumers,
+                                 Duration lease) {
         this.database = database;
         this.subscriberId = subscriberId;
         this.receiversByType = receivers.stream()
                 .collect(java.util.stream.Collectors.toMap(Receiver::eventType, r -> r));
-        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "transport-queue-poller-" + subscriberId);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.scheduler = Executors.newFixedThreadPool(consumers, r -> {
+            Thread t = new Thread(r, "transport-queue-poller-" + subscriberId + "-" + threadCount.incrementAndGet());
             t.setDaemon(true);
             return t;
         });
         this.pollIntervalMs = pollIntervalMs;
         this.batchSize = batchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.currentBatchSize = batchSize;
+        this.consumers = consumers;
+        this.lease = lease;
     }
 
     /**
@@ -57,8 +109,14 @@ public class TransportQueuePoller {
      */
     public void start() {
         if (running.compareAndSet(false, true)) {
-            LOG.info("Starting transport queue poller for subscriber: {}", subscriberId);
-            scheduler.scheduleWithFixedDelay(this::poll, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+            LOG.info("Starting transport queue poller for subscriber: {} with {} consumers", subscriberId, consumers);
+            queuedListener = database.onTransportQueued(subscriberId, this::wake).orElse(null);
+            if (queuedListener == null) {
+                LOG.info("Database does not push transport queue changes, polling every {} ms", pollIntervalMs);
+            }
+            for (int i = 0; i < consumers; i++) {
+                scheduler.execute(this::consume);
+            }
         }
     }
 
@@ -68,6 +126,12 @@ public class TransportQueuePoller {
     public void stop() {
         if (running.compareAndSet(true, false)) {
             LOG.info("Stopping transport queue poller for subscriber: {}", subscriberId);
+            ListenerRegistration listener = queuedListener;
+            if (listener != null) {
+                listener.close();
+                queuedListener = null;
+            }
+            wake();
             scheduler.shutdown();
             try {
                 if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -80,61 +144,257 @@ public class TransportQueuePoller {
         }
     }
 
-    private void poll() {
+    private void consume() {
+        int limit = batchSize;
+        long idleDelayMs = MIN_IDLE_DELAY_MS;
+        while (running.get()) {
+            // Read before polling so that entries queued during the poll still wake this consumer
+            long seen = wakeups();
+            Polled polled = poll(limit);
+            if (polled.claimed() >= limit && !polled.failed()) {
+                limit = Math.min(limit * 2, maxBatchSize);
+                idleDelayMs = MIN_IDLE_DELAY_MS;
+                currentBatchSize = limit;
+                continue;
+            }
+            limit = Math.max(limit / 2, batchSize);
+            currentBatchSize = limit;
+            if (polled.claimed() > 0 && !polled.failed()) {
+                idleDelayMs = MIN_IDLE_DELAY_MS;
+            }
+            try {
+                awaitWakeup(seen, idleDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (polled.claimed() == 0 || polled.failed()) {
+                idleDelayMs = Math.min(idleDelayMs * 2, pollIntervalMs);
+            }
+        }
+    }
+
+    private void wake() {
+        synchronized (wakeup) {
+            wakeups++;
+            wakeup.notifyAll();
+        }
+    }
+
+    private long wakeups() {
+        synchronized (wakeup) {
+            return wakeups;
+        }
+    }
+
+    private void awaitWakeup(long seen, long delayMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        synchronized (wakeup) {
+            long remaining;
+            while (running.get() && wakeups == seen && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(wakeup, remaining);
+            }
+        }
+    }
+
+    /**
+     * Claims and processes one batch of up to limit entries, then marks the processed ones with one update.
+     */
+    private Polled poll(int limit) {
         if (!running.get()) {
-            return;
+            return Polled.NOTHING;
         }
 
         try {
-            List<TransportQueueEntry> entries = database.pollTransportQueue(subscriberId, batchSize);
+            List<TransportQueueEntry> entries = database.claimTransportQueue(subscriberId, limit, lease);
             
             if (!entries.isEmpty()) {
                 LOG.debug("Polled {} entries from transport queue for subscriber {}", 
                         entries.size(), subscriberId);
             }
 
+            boolean failed = false;
+            Payloads payloads = new Payloads();
+            List<TransportQueueEntry> processed = new ArrayList<>(entries.size());
+            Map<String, List<TransportQueueEntry>> batched = null;
             for (TransportQueueEntry entry : entries) {
-                processEntry(entry);
+                if (receiversByType.get(entry.eventType()) instanceof BatchReceiver) {
+                    if (batched == null) {
+                        batched = new LinkedHashMap<>();
+                    }
+                    batched.computeIfAbsent(entry.eventType(), type -> new ArrayList<>()).add(entry);
+                } else {
+                    failed |= !processEntry(entry, payloads, processed);
+                }
+            }
+            if (batched != null) {
+                for (Map.Entry<String, List<TransportQueueEntry>> batch : batched.entrySet()) {
+                    failed |= !processBatch(batch.getKey(), batch.getValue(), payloads, processed);
+                }
+            }
+            if (!processed.isEmpty()) {
+                try {
+                    database.markTransportProcessed(processed);
+                    LOG.debug("Marked {} events as processed for subscriber {}", processed.size(), subscriberId);
+                } catch (Exception e) {
+                    // Delivered but still claimed, they are delivered again once their lease expires
+                    LOG.error("Could not mark {} transport queue entries as processed for subscriber {}: {}",
+                            processed.size(), subscriberId, e.getMessage(), e);
+                    failed = true;
+                }
             }
+            return new Polled(entries.size(), failed);
         } catch (Exception e) {
             LOG.error("Error polling transport queue for subscriber {}: {}", 
                     subscriberId, e.getMessage(), e);
+            return Polled.FAILED;
         }
     }
 
-    private void processEntry(TransportQueueEntry entry) {
+    private boolean processEntry(TransportQueueEntry entry, Payloads payloads,
+                                 List<TransportQueueEntry> processed) {
         try {
             Receiver receiver = receiversByType.get(entry.eventType());
             if (receiver == null) {
                 LOG.warn("No receiver found for event type: {}, marking as processed", entry.eventType());
-                database.markTransportProcessed(entry.eventId(), entry.subscriberId());
-                return;
+                processed.add(entry);
+                return true;
             }
 
-            // Parse the payload to extract events (use BasicSpsEvents for deserialization)
-            BasicSpsEvents basicEvents = JsonProvider.json().readValue(entry.payload(), BasicSpsEvents.class);
-
-            // Find the specific event by ID and deliver it
-            for (SpsEvent event : basicEvents.spsEvents()) {
-                if (event.id().equals(entry.eventId())) {
-                    LOG.info("Delivering event {} from transport queue to receiver", entry.eventId());
-                    receiver.receive(event);
-                    break;
-                }
+            SpsEvent event = payloads.find(entry);
+            if (event != null) {
+                LOG.info("Delivering event {} from transport queue to receiver", entry.eventId());
+                receiver.receive(event);
             }
 
-            // Mark as processed
-            database.markTransportProcessed(entry.eventId(), entry.subscriberId());
-            LOG.debug("Marked event {} as processed for subscriber {}", 
-                    entry.eventId(), entry.subscriberId());
+            processed.add(entry);
+            return true;
 
         } catch (Exception e) {
             LOG.error("Error processing transport queue entry {}: {}", 
                     entry.eventId(), e.getMessage(), e);
+            release(entry);
+            return false;
+        }
+    }
+
+    /**
+     * Delivers all entries of one event type to its batch receiver in one call. Entries are marked processed when
+     * acked and released for the next poll otherwise. Returns false when any entry was released.
+     */
+    private boolean processBatch(String eventType, List<TransportQueueEntry> entries, Payloads payloads,
+                                 List<TransportQueueEntry> processed) {
+        BatchReceiver receiver = (BatchReceiver) receiversByType.get(eventType);
+        boolean failed = false;
+        List<TransportQueueEntry> delivered = new ArrayList<>(entries.size());
+        List<SpsEvent> events = new ArrayList<>(entries.size());
+        for (TransportQueueEntry entry : entries) {
+            try {
+                SpsEvent event = payloads.find(entry);
+                if (event == null) {
+                    processed.add(entry);
+                    continue;
+                }
+                delivered.add(entry);
+                events.add(event);
+            } catch (Exception e) {
+                LOG.error("Error processing transport queue entry {}: {}",
+                        entry.eventId(), e.getMessage(), e);
+                release(entry);
+                failed = true;
+            }
+        }
+        if (events.isEmpty()) {
+            return !failed;
+        }
+
+        try {
+            LOG.info("Delivering {} events of type {} from transport queue to batch receiver",
+                    events.size(), eventType);
+            List<Receipt> receipts = receiver.receive(new SpsEvents(eventType, events));
+            if (receipts == null || receipts.size() != events.size()) {
+                LOG.error("Batch receiver for {} returned {} receipts for {} events, releasing them",
+                        eventType, receipts == null ? null : receipts.size(), events.size());
+                delivered.forEach(this::release);
+                return false;
+            }
+            for (int i = 0; i < receipts.size(); i++) {
+                TransportQueueEntry entry = delivered.get(i);
+                if (receipts.get(i) == Receipt.ACK) {
+                    processed.add(entry);
+                } else {
+                    LOG.warn("Batch receiver returned {} for transport queue entry {}, releasing it",
+                            receipts.get(i), entry.eventId());
+                    release(entry);
+                    failed = true;
+                }
+            }
+            return !failed;
+        } catch (Exception e) {
+            LOG.error("Error processing {} transport queue entries of type {}: {}",
+                    events.size(), eventType, e.getMessage(), e);
+            delivered.forEach(this::release);
+            return false;
+        }
+    }
+
+    /**
+     * Makes a failed entry available to the next poll, its lease expiring covers a failed release.
+     */
+    private void release(TransportQueueEntry entry) {
+        try {
+            database.releaseTransportClaim(entry);
+        } catch (Exception e) {
+            LOG.warn("Could not release transport queue entry {}, it is retried when its lease expires: {}",
+                    entry.eventId(), e.getMessage());
         }
     }
 
     public boolean isRunning() {
         return running.get();
     }
+
+    /**
+     * Depth and oldest entry of this subscriber's unprocessed transport queue entries, read together with one
+     * query. Use {@link TransportQueueStats#lag(Instant)} for how long the oldest entry has been waiting.
+     */
+    public TransportQueueStats stats() {
+        return database.transportQueueStats(subscriberId);
+    }
+
+    /**
+     * The batch size the consumers most recently adapted to.
+     */
+    public int currentBatchSize() {
+        return currentBatchSize;
+    }
+
+    /**
+     * Parses each distinct payload of a poll once. Entries queued by older publishers share one payload holding
+     * the whole published batch, so parsing it per entry cost quadratic work.
+     */
+    private static final class Payloads {
+        private final Map<String, Map<String, SpsEvent>> eventsByPayload = new HashMap<>();
+
+        /**
+         * The entry's event, null when its payload does not contain it.
+         */
+        SpsEvent find(TransportQueueEntry entry) {
+            return eventsByPayload.computeIfAbsent(entry.payload(), Payloads::parse).get(entry.eventId());
+        }
+
+        private static Map<String, SpsEvent> parse(String payload) {
+            BasicSpsEvents basicEvents = JsonProvider.json().readValue(payload, BasicSpsEvents.class);
+            Map<String, SpsEvent> byId = new HashMap<>();
+            for (SpsEvent event : basicEvents.spsEvents()) {
+                byId.putIfAbsent(event.id(), event);
+            }
+            return byId;
+        }
+    }
+
+    private record Polled(int claimed, boolean failed) {
+        static final Polled NOTHING = new Polled(0, false);
+        static final Polled FAILED = new Polled(0, true);
+    }
 }
@@ -3,6 +3,7 @@ package com.kildeen.sps.inlet;
 import com.kildeen.sps.Receipt;
 import com.kildeen.sps.SpsEvent;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -25,6 +26,14 @@ public class AckOrNackEvent {
         ackOrNackEvents.nack(event);
     }
 
+    public CompletableFuture<Void> ackAsync(SpsEvent event) {
+        return ackOrNackEvents.ackAsync(event);
+    }
+
+    public CompletableFuture<Void> nackAsync(SpsEvent event) {
+        return ackOrNackEvents.nackAsync(event);
+    }
+
     public void retry(String id, Receipt receipt) {
         retryQueue.save(id, receipt);
     }
@@ -3,9 +3,21 @@ package com.kildeen.sps.inlet;
 import com.kildeen.sps.Bridge;
 import com.kildeen.sps.SpsEvent;
 
+import java.util.concurrent.CompletableFuture;
+
 @Bridge
 public interface AckOrNackEvents {
     void ack(SpsEvent event);
 
     void nack(SpsEvent event);
+
+    /**
+     * @return completes once the receipt is durable
+     */
+    CompletableFuture<Void> ackAsync(SpsEvent event);
+
+    /**
+     * @return completes once the receipt is durable
+     */
+    CompletableFuture<Void> nackAsync(SpsEvent event);
 }
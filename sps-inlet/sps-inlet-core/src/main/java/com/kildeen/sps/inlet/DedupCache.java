@@ -0,0 +1,193 @@
+package com.kildeen.sps.inlet;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Answers most deduplication checks without the database.
+ *
+ * <p>Recently acked ids are kept in a bounded LRU and answered as {@link Verdict#ACKED}. Every acked id is also
+ * added to a rolling bloom filter made of two generations that are rotated once per window, so an id stays in the
+ * filter for one to two windows. Ids the filter has never seen are answered as {@link Verdict#NEW}, anything else
+ * is {@link Verdict#UNKNOWN} and has to be looked up.
+ *
+ * <p>NEW is only a definite answer when this cache recorded every ack within the window. Acks made before it was
+ * created, by an earlier process or another instance, are not in the filter, so every check is answered as UNKNOWN
+ * until one full window has passed since construction. Inlet instances that receive for the same subscriber in
+ * separate processes never see each other's acks, enable the cache only where one instance receives for it.
+ */
+public class DedupCache {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final Map<String, Boolean> recent;
+    private final int idsPerWindow;
+    private final long windowNanos;
+    private final LongSupplier nanoTime;
+    private final long createdAt;
+    private volatile BloomFilter current;
+    private volatile BloomFilter previous;
+    private volatile long rotatedAt;
+
+    private final AtomicLong ackedHits = new AtomicLong();
+    private final AtomicLong newHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param recentIds how many recently acked ids to answer from memory
+     * @param idsPerWindow expected acks per window, sizes each bloom filter generation
+     * @param window how long an acked id is at least remembered by the bloom filter
+     */
+    public DedupCache(int recentIds, int idsPerWindow, Duration window) {
+        this(recentIds, idsPerWindow, window, System::nanoTime);
+    }
+
+    DedupCache(int recentIds, int idsPerWindow, Duration window, LongSupplier nanoTime) {
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > recentIds;
+            }
+        };
+        this.idsPerWindow = idsPerWindow;
+        this.windowNanos = window.toNanos();
+        this.current = new BloomFilter(idsPerWindow, FALSE_POSITIVE_RATE);
+        this.previous = new BloomFilter(idsPerWindow, FALSE_POSITIVE_RATE);
+        this.nanoTime = nanoTime;
+        this.createdAt = nanoTime.getAsLong();
+        this.rotatedAt = createdAt;
+    }
+
+    Verdict lookup(String id) {
+        long now = rotateIfDue();
+        synchronized (recent) {
+            if (recent.get(id) != null) {
+                ackedHits.incrementAndGet();
+                return Verdict.ACKED;
+            }
+        }
+        long hash = hash(id);
+        boolean warm = now - createdAt >= windowNanos;
+        if (warm && !current.mightContain(hash) && !previous.mightContain(hash)) {
+            newHits.incrementAndGet();
+            return Verdict.NEW;
+        }
+        misses.incrementAndGet();
+        return Verdict.UNKNOWN;
+    }
+
+    void recordAcked(String id) {
+        rotateIfDue();
+        synchronized (recent) {
+            recent.put(id, Boolean.TRUE);
+        }
+        current.add(hash(id));
+    }
+
+    /**
+     * Checks answered as acked from the recent ids.
+     */
+    public long ackedHits() {
+        return ackedHits.get();
+    }
+
+    /**
+     * Checks answered as new by the bloom filter.
+     */
+    public long newHits() {
+        return newHits.get();
+    }
+
+    /**
+     * Checks answered without the database.
+     */
+    public long hits() {
+        return ackedHits.get() + newHits.get();
+    }
+
+    /**
+     * Checks that had to go to the database.
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    private long rotateIfDue() {
+        long now = nanoTime.getAsLong();
+        if (now - rotatedAt < windowNanos) {
+            return now;
+        }
+        synchronized (this) {
+            if (now - rotatedAt < windowNanos) {
+                return now;
+            }
+            // Idle for two windows or more: nothing in either generation is recent enough to keep
+            previous = now - rotatedAt >= 2 * windowNanos
+                    ? new BloomFilter(idsPerWindow, FALSE_POSITIVE_RATE)
+                    : current;
+            current = new BloomFilter(idsPerWindow, FALSE_POSITIVE_RATE);
+            rotatedAt = now;
+        }
+        return now;
+    }
+
+    /**
+     * 64-bit FNV-1a, the halves feed the double hashing in {@link BloomFilter}.
+     */
+    private static long hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public enum Verdict {
+        ACKED, NEW, UNKNOWN
+    }
+
+    private static final class BloomFilter {
+        private final AtomicLongArray words;
+        private final long bits;
+        private final int hashes;
+
+        private BloomFilter(int expectedIds, double falsePositiveRate) {
+            long optimalBits = (long) Math.ceil(
+                    -expectedIds * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bits = Math.max(64, (optimalBits + 63) / 64 * 64);
+            this.hashes = Math.max(1, (int) Math.round((double) bits / expectedIds * Math.log(2)));
+            this.words = new AtomicLongArray((int) (bits / 64));
+        }
+
+        void add(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bits);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long value;
+                do {
+                    value = words.get(word);
+                } while ((value & mask) == 0 && !words.compareAndSet(word, value, value | mask));
+            }
+        }
+
+        boolean mightContain(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bits);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
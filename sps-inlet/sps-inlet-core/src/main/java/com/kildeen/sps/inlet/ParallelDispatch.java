@@ -0,0 +1,12 @@
+package com.kildeen.sps.inlet;
+
+import com.kildeen.sps.SpsEvent;
+
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Dispatches the events of a batch concurrently on the executor, keeping events with equal partition keys in order.
+ */
+record ParallelDispatch(Executor executor, Function<? super SpsEvent, ?> partitionKey) {
+}
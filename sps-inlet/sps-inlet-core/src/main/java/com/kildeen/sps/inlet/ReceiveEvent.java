@@ -2,11 +2,24 @@ package com.kildeen.sps.inlet;
 
 import com.kildeen.sps.Receipt;
 import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
 import com.kildeen.sps.persistence.Database;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Processes incoming events with deduplication and proper error handling.
@@ -18,81 +31,280 @@ public class ReceiveEvent {
     private final Map<String, Receiver> receivers;
     private final AckOrNackEvent ackOrNackEvent;
     private final Database database;
+    private final DedupCache dedupCache;
+    private final ParallelDispatch parallelDispatch;
 
     ReceiveEvent(Map<String, Receiver> receivers, AckOrNackEvent ackOrNackEvent) {
         this(receivers, ackOrNackEvent, null);
     }
 
     ReceiveEvent(Map<String, Receiver> receivers, AckOrNackEvent ackOrNackEvent, Database database) {
+        this(receivers, ackOrNackEvent, database, null);
+    }
+
+    ReceiveEvent(Map<String, Receiver> receivers, AckOrNackEvent ackOrNackEvent, Database database,
+                 DedupCache dedupCache) {
+        this(receivers, ackOrNackEvent, database, dedupCache, null);
+    }
+
+    ReceiveEvent(Map<String, Receiver> receivers, AckOrNackEvent ackOrNackEvent, Database database,
+                 DedupCache dedupCache, ParallelDispatch parallelDispatch) {
         this.receivers = receivers;
         this.ackOrNackEvent = ackOrNackEvent;
         this.database = database;
+        this.dedupCache = dedupCache;
+        this.parallelDispatch = parallelDispatch;
     }
 
     Receipt receive(SpsEvent spsEvent) {
-        // Deduplication check: skip if already processed
-        if (database != null && isAlreadyProcessed(spsEvent)) {
-            LOG.debug("Event {} already processed, returning ACK (deduplicated)", spsEvent.id());
-            return Receipt.ACK;
+        return receive(List.of(spsEvent)).get(0);
+    }
+
+    /**
+     * Receives a batch of events. Receipts are recorded without waiting for each write and the call returns once
+     * all of them are durable, so the receipts can be sent back to the publisher right away.
+     */
+    List<Receipt> receive(List<? extends SpsEvent> spsEvents) {
+        Batch batch = new Batch(spsEvents);
+        batch.processed.addAll(alreadyProcessed(spsEvents, batch.dedupIds));
+        dispatchToBatchReceivers(batch);
+
+        if (parallelDispatch == null || spsEvents.size() < 2) {
+            for (int i = 0; i < spsEvents.size(); i++) {
+                dispatch(batch, i);
+            }
+        } else {
+            dispatchInParallel(batch);
         }
 
-        Receipt receipt = Receipt.UNKNOWN;
+        Receipt[] receipts = batch.receipts;
+        for (int i = 0; i < receipts.length; i++) {
+            if (batch.writes[i] != null) {
+                receipts[i] = awaitRecorded(spsEvents.get(i), receipts[i], batch.writes[i]);
+                if (dedupCache != null && receipts[i] == Receipt.ACK) {
+                    dedupCache.recordAcked(batch.dedupIds[i]);
+                }
+            }
+        }
+        return Arrays.asList(receipts);
+    }
 
+    private void dispatch(Batch batch, int i) {
+        if (batch.receipts[i] != null) {
+            // Handled by a batch receiver
+            return;
+        }
+        SpsEvent spsEvent = batch.spsEvents.get(i);
+        // Deduplication check: skip if already processed, earlier in this batch included
+        if (batch.processed.contains(batch.dedupIds[i])) {
+            LOG.debug("Event {} already processed, returning ACK (deduplicated)", spsEvent.id());
+            batch.receipts[i] = Receipt.ACK;
+            return;
+        }
+        Receiver receiver = receivers.get(spsEvent.type());
+        if (receiver == null) {
+            LOG.error("No receiver registered for event type {}, event id {}", spsEvent.type(), spsEvent.id());
+            batch.receipts[i] = Receipt.NACK;
+            return;
+        }
         try {
-            Receiver receiver = receivers.get(spsEvent.type());
-            if (receiver == null) {
-                LOG.error("No receiver registered for event type {}, event id {}", spsEvent.type(), spsEvent.id());
-                receipt = Receipt.NACK;
-                return receipt;
-            }
             receiver.receive(spsEvent);
-            try {
-                ackOrNackEvent.ack(spsEvent);
-                receipt = Receipt.ACK;
-            } catch (Exception e) {
-                LOG.error("Failed to acknowledge event {}: {}", spsEvent.id(), e.getMessage(), e);
-                receipt = Receipt.ACK_FAILURE;
+            batch.receipts[i] = Receipt.ACK;
+            if (database != null) {
+                batch.processed.add(batch.dedupIds[i]);
             }
         } catch (Exception e) {
             LOG.error("Event processing failed for {}: {}", spsEvent.id(), e.getMessage(), e);
-            try {
-                ackOrNackEvent.nack(spsEvent);
-                receipt = Receipt.NACK;
-            } catch (Exception ex) {
-                LOG.error("Failed to NACK event {}: {}", spsEvent.id(), ex.getMessage(), ex);
-                receipt = Receipt.NACK_FAILURE;
+            batch.receipts[i] = Receipt.NACK;
+        }
+        batch.writes[i] = record(spsEvent, batch.receipts[i]);
+    }
+
+    /**
+     * Hands each {@link BatchReceiver} all new events of its type in one call. Repeats of an event id within the
+     * batch are not passed on and get the receipt of their first occurrence.
+     */
+    private void dispatchToBatchReceivers(Batch batch) {
+        Map<String, List<Integer>> indicesByType = null;
+        Map<String, Integer> firstByDedupId = new HashMap<>();
+        List<int[]> repeats = new ArrayList<>();
+        for (int i = 0; i < batch.spsEvents.size(); i++) {
+            SpsEvent spsEvent = batch.spsEvents.get(i);
+            if (!(receivers.get(spsEvent.type()) instanceof BatchReceiver)) {
+                continue;
             }
-        } finally {
-            if (receipt == Receipt.UNKNOWN) {
-                throw new RuntimeException("unknown system state caused by:" + spsEvent.id());
+            if (batch.processed.contains(batch.dedupIds[i])) {
+                LOG.debug("Event {} already processed, returning ACK (deduplicated)", spsEvent.id());
+                batch.receipts[i] = Receipt.ACK;
+                continue;
+            }
+            Integer first = firstByDedupId.putIfAbsent(batch.dedupIds[i], i);
+            if (first != null) {
+                repeats.add(new int[]{i, first});
+                continue;
+            }
+            if (indicesByType == null) {
+                indicesByType = new LinkedHashMap<>();
+            }
+            indicesByType.computeIfAbsent(spsEvent.type(), type -> new ArrayList<>()).add(i);
+        }
+        if (indicesByType == null) {
+            return;
+        }
+
+        indicesByType.forEach((type, indices) -> {
+            List<SpsEvent> events = new ArrayList<>(indices.size());
+            indices.forEach(i -> events.add(batch.spsEvents.get(i)));
+            List<Receipt> receipts = receiveBatch((BatchReceiver) receivers.get(type), new SpsEvents(type, events));
+            for (int j = 0; j < indices.size(); j++) {
+                int i = indices.get(j);
+                batch.receipts[i] = receipts.get(j);
+                if (receipts.get(j) == Receipt.ACK && database != null) {
+                    batch.processed.add(batch.dedupIds[i]);
+                }
+                batch.writes[i] = record(batch.spsEvents.get(i), receipts.get(j));
+            }
+        });
+        for (int[] repeat : repeats) {
+            batch.receipts[repeat[0]] = batch.receipts[repeat[1]];
+        }
+    }
+
+    private List<Receipt> receiveBatch(BatchReceiver receiver, SpsEvents spsEvents) {
+        List<SpsEvent> events = spsEvents.spsEvents();
+        List<Receipt> receipts;
+        try {
+            receipts = receiver.receive(spsEvents);
+        } catch (Exception e) {
+            LOG.error("Batch processing failed for {} events of type {}: {}", events.size(), spsEvents.eventType(),
+                    e.getMessage(), e);
+            return Collections.nCopies(events.size(), Receipt.NACK);
+        }
+        if (receipts == null || receipts.size() != events.size()) {
+            LOG.error("Batch receiver for {} returned {} receipts for {} events, NACKing the batch",
+                    spsEvents.eventType(), receipts == null ? null : receipts.size(), events.size());
+            return Collections.nCopies(events.size(), Receipt.NACK);
+        }
+        List<Receipt> normalized = new ArrayList<>(receipts.size());
+        for (Receipt receipt : receipts) {
+            // Anything but an ACK has to be redelivered
+            normalized.add(receipt == Receipt.ACK ? Receipt.ACK : Receipt.NACK);
+        }
+        return normalized;
+    }
+
+    /**
+     * Events sharing a partition key are dispatched in order by one task, partitions run concurrently. Repeats of
+     * an event id join the partition of its first occurrence so they are still deduplicated against it.
+     */
+    private void dispatchInParallel(Batch batch) {
+        Map<Object, List<Integer>> partitions = new LinkedHashMap<>();
+        Map<String, List<Integer>> partitionByDedupId = new HashMap<>();
+        for (int i = 0; i < batch.spsEvents.size(); i++) {
+            List<Integer> partition = partitionByDedupId.get(batch.dedupIds[i]);
+            if (partition == null) {
+                Object key = parallelDispatch.partitionKey().apply(batch.spsEvents.get(i));
+                partition = partitions.computeIfAbsent(key, k -> new ArrayList<>());
+                partitionByDedupId.put(batch.dedupIds[i], partition);
             }
-            if (receipt == Receipt.ACK_FAILURE || receipt == Receipt.NACK_FAILURE) {
-                ackOrNackEvent.retry(spsEvent.id(), receipt);
+            partition.add(i);
+        }
+
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[partitions.size()];
+        int task = 0;
+        for (List<Integer> partition : partitions.values()) {
+            tasks[task++] = CompletableFuture.runAsync(() -> partition.forEach(i -> dispatch(batch, i)),
+                    parallelDispatch.executor());
+        }
+        CompletableFuture.allOf(tasks).join();
+    }
+
+    private CompletableFuture<Void> record(SpsEvent spsEvent, Receipt receipt) {
+        try {
+            return receipt == Receipt.ACK ? ackOrNackEvent.ackAsync(spsEvent) : ackOrNackEvent.nackAsync(spsEvent);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private Receipt awaitRecorded(SpsEvent spsEvent, Receipt receipt, CompletableFuture<?> write) {
+        try {
+            write.join();
+            return receipt;
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            Receipt failure;
+            if (receipt == Receipt.ACK) {
+                LOG.error("Failed to acknowledge event {}: {}", spsEvent.id(), cause.getMessage(), cause);
+                failure = Receipt.ACK_FAILURE;
+            } else {
+                LOG.error("Failed to NACK event {}: {}", spsEvent.id(), cause.getMessage(), cause);
+                failure = Receipt.NACK_FAILURE;
             }
+            ackOrNackEvent.retry(spsEvent.id(), failure);
+            return failure;
         }
-        return receipt;
     }
 
     /**
-     * Check if event was already successfully processed (deduplication).
+     * Resolves deduplication for the whole batch with at most one lookup, filling in each event's dedup id.
+     * Ids the dedup cache can answer never reach the database.
      */
-    private boolean isAlreadyProcessed(SpsEvent spsEvent) {
+    private Set<String> alreadyProcessed(List<? extends SpsEvent> spsEvents, String[] dedupIds) {
+        for (int i = 0; i < dedupIds.length; i++) {
+            // Forked ids already end with the subscriber ({originalId}_{subscriberId}), receipts are recorded under them
+            dedupIds[i] = spsEvents.get(i).id();
+        }
+        Set<String> processed = new HashSet<>();
+        if (database == null) {
+            return processed;
+        }
+
+        List<String> lookup;
+        if (dedupCache == null) {
+            lookup = Arrays.asList(dedupIds);
+        } else {
+            lookup = new ArrayList<>();
+            for (String dedupId : dedupIds) {
+                switch (dedupCache.lookup(dedupId)) {
+                    case ACKED -> processed.add(dedupId);
+                    case UNKNOWN -> lookup.add(dedupId);
+                    case NEW -> {
+                        // Not acked within the window, no need to ask the database
+                    }
+                }
+            }
+        }
+        if (lookup.isEmpty()) {
+            return processed;
+        }
         try {
-            // Extract subscriber ID from forked event ID (format: {originalId}_{subscriberId})
-            String eventId = spsEvent.id();
-            String subscriberId = extractSubscriberId(eventId);
-            return database.isAck(eventId, subscriberId);
+            Set<String> acked = database.ackedIds(lookup);
+            processed.addAll(acked);
+            if (dedupCache != null) {
+                acked.forEach(dedupCache::recordAcked);
+            }
         } catch (Exception e) {
-            LOG.warn("Deduplication check failed for {}, proceeding with processing", spsEvent.id(), e);
-            return false;
+            LOG.warn("Deduplication check failed for {} events, proceeding with processing", lookup.size(), e);
         }
+        return processed;
     }
 
-    private String extractSubscriberId(String forkedEventId) {
-        int lastUnderscore = forkedEventId.lastIndexOf('_');
-        if (lastUnderscore > 0) {
-            return forkedEventId.substring(lastUnderscore + 1);
+    /**
+     * Per event state of one received batch, each index is only touched by the task dispatching that event.
+     */
+    private static final class Batch {
+        private final List<? extends SpsEvent> spsEvents;
+        private final Receipt[] receipts;
+        private final CompletableFuture<?>[] writes;
+        private final String[] dedupIds;
+        private final Set<String> processed = ConcurrentHashMap.newKeySet();
+
+        private Batch(List<? extends SpsEvent> spsEvents) {
+            this.spsEvents = spsEvents;
+            this.receipts = new Receipt[spsEvents.size()];
+            this.writes = new CompletableFuture<?>[spsEvents.size()];
+            this.dedupIds = new String[spsEvents.size()];
         }
-        return "";
     }
 }
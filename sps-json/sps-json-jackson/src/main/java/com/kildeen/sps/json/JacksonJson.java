@@ -4,6 +4,9 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kildeen.sps.ExceptionUtils;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 public class JacksonJson implements Json {
     private final static ObjectMapper MAPPER = new ObjectMapper();
 
@@ -17,6 +20,14 @@ public class JacksonJson implements Json {
         }
     }
     @Override
+    public <T> T readValue(byte[] json, Class<T> clazz) {
+        try {
+            return JacksonJson.MAPPER.readValue(json, clazz);
+        } catch (IOException e) {
+            throw ExceptionUtils.rethrow(e);
+        }
+    }
+    @Override
     public byte[] writeValueAsBytes(Object object) {
         try {
             return JacksonJson.MAPPER.writeValueAsBytes(object);
@@ -24,6 +35,15 @@ public class JacksonJson implements Json {
             throw ExceptionUtils.rethrow(e);
         }
     }
+    @Override
+    public void write(Object object, OutputStream out) {
+        try {
+            JacksonJson.MAPPER.writeValue(out, object);
+        } catch (IOException e) {
+            throw ExceptionUtils.rethrow(e);
+        }
+    }
+
     @Override
     public String write(Object object) {
         try {
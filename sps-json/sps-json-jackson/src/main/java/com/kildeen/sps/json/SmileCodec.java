@@ -0,0 +1,52 @@
+package com.kildeen.sps.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.kildeen.sps.ExceptionUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Jackson's Smile, binary JSON with the same data model. Repeated property names and short string values, the keys of
+ * event data and the envelope of each event, are written once and referenced after that.
+ */
+public class SmileCodec implements BinaryCodec {
+    public static final String CONTENT_TYPE = "application/x-jackson-smile";
+    private final static ObjectMapper MAPPER = new ObjectMapper(SmileFactory.builder()
+            .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+            .build());
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public <T> T readValue(byte[] bytes, Class<T> clazz) {
+        try {
+            return SmileCodec.MAPPER.readValue(bytes, clazz);
+        } catch (IOException e) {
+            throw ExceptionUtils.rethrow(e);
+        }
+    }
+
+    @Override
+    public byte[] writeValueAsBytes(Object object) {
+        try {
+            return SmileCodec.MAPPER.writeValueAsBytes(object);
+        } catch (IOException e) {
+            throw ExceptionUtils.rethrow(e);
+        }
+    }
+
+    @Override
+    public void write(Object object, OutputStream out) {
+        try {
+            SmileCodec.MAPPER.writeValue(out, object);
+        } catch (IOException e) {
+            throw ExceptionUtils.rethrow(e);
+        }
+    }
+}
@@ -7,13 +7,18 @@ import com.kildeen.sps.Schemas;
 import com.kildeen.sps.SpsEvent;
 import com.kildeen.sps.persistence.Config;
 import com.kildeen.sps.persistence.Database;
+import com.kildeen.sps.persistence.ListenerRegistration;
+import com.kildeen.sps.persistence.PendingRetry;
 import com.kildeen.sps.persistence.TransportQueueEntry;
+import com.kildeen.sps.persistence.TransportQueueStats;
 import com.kildeen.sps.publish.Retry;
 import com.kildeen.sps.publish.Subscriptions;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -24,7 +29,9 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 
 /**
@@ -40,6 +47,7 @@ public class EmbeddedDatabase implements Database {
 
     // Core data stores
     private final Queue<Subscriptions.Subscription> subs = new ConcurrentLinkedQueue<>();
+    private final AtomicLong subscriptionsVersion = new AtomicLong();
     private final ConcurrentHashMap<String, Schemas.Schema> schemasByType = new ConcurrentHashMap<>();
     private final Map<Retry, AtomicInteger> retries = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Set<String>> trippedCircuitsBySubId = new ConcurrentHashMap<>();
@@ -47,6 +55,11 @@ public class EmbeddedDatabase implements Database {
     // Transport queue for database-based delivery fallback
     private final ConcurrentLinkedDeque<TransportQueueEntry> transportQueue = new ConcurrentLinkedDeque<>();
     private final AtomicInteger transportQueueIdGenerator = new AtomicInteger(0);
+    private final ConcurrentHashMap<Long, TransportClaim> transportClaims = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, List<Runnable>> transportListeners = new ConcurrentHashMap<>();
+
+    // Durable retries, keyed by subscriber id and event id
+    private final Map<List<String>, PendingRetry> pendingRetries = new ConcurrentHashMap<>();
 
     // Receipt storage with bounded size and O(1) indexed lookup
     private final ConcurrentLinkedDeque<IdWithReceipts.IdWithReceipt> receipts = new ConcurrentLinkedDeque<>();
@@ -59,6 +72,7 @@ public class EmbeddedDatabase implements Database {
     @Override
     public void addSubscription(Subscriptions.Subscription subscription) {
         subs.add(subscription);
+        subscriptionsVersion.incrementAndGet();
     }
 
     @Override
@@ -109,6 +123,11 @@ public class EmbeddedDatabase implements Database {
                 .toList());
     }
 
+    @Override
+    public long subscriptionsVersion() {
+        return subscriptionsVersion.get();
+    }
+
     @Override
     public Config fetchConfig() {
         return new Config(new Config.SchemaGen("http://localhost:7201"));
@@ -119,6 +138,17 @@ public class EmbeddedDatabase implements Database {
         return findById(id).stream().anyMatch(is(Receipt.ACK));  // O(1) lookup
     }
 
+    @Override
+    public Set<String> ackedIds(Collection<String> ids) {
+        Set<String> acked = new HashSet<>();
+        for (String id : ids) {
+            if (findById(id).stream().anyMatch(is(Receipt.ACK))) {  // O(1) lookup per id
+                acked.add(id);
+            }
+        }
+        return acked;
+    }
+
     @Override
     public boolean isNack(String id) {
         return findById(id).stream().anyMatch(is(Receipt.NACK));  // O(1) lookup
@@ -205,6 +235,56 @@ public class EmbeddedDatabase implements Database {
         return true;
     }
 
+    // Retry store
+
+    @Override
+    public boolean storesRetries() {
+        return true;
+    }
+
+    @Override
+    public synchronized boolean saveRetry(PendingRetry retry) {
+        List<String> key = List.of(retry.subscriberId(), retry.eventId());
+        PendingRetry pending = pendingRetries.get(key);
+        if (pending != null && pending.claimId() == null) {
+            return false;
+        }
+        pendingRetries.put(key, new PendingRetry(retry.eventId(), retry.eventType(), retry.subscriberId(),
+                retry.payload(), retry.retries(), retry.deliveryType(), retry.createdAt(), retry.dueAt(), null));
+        return true;
+    }
+
+    @Override
+    public synchronized List<PendingRetry> claimDueRetries(int limit, Duration lease) {
+        Instant now = Instant.now();
+        UUID claimId = UUID.randomUUID();
+        List<PendingRetry> claimed = pendingRetries.values().stream()
+                .filter(retry -> !retry.dueAt().isAfter(now))
+                .sorted(java.util.Comparator.comparing(PendingRetry::dueAt))
+                .limit(limit)
+                .map(retry -> new PendingRetry(retry.eventId(), retry.eventType(), retry.subscriberId(),
+                        retry.payload(), retry.retries(), retry.deliveryType(), retry.createdAt(), now.plus(lease),
+                        claimId))
+                .toList();
+        claimed.forEach(retry -> pendingRetries.put(List.of(retry.subscriberId(), retry.eventId()), retry));
+        return claimed;
+    }
+
+    @Override
+    public synchronized void completeRetries(List<PendingRetry> retries) {
+        for (PendingRetry retry : retries) {
+            List<String> key = List.of(retry.subscriberId(), retry.eventId());
+            PendingRetry pending = pendingRetries.get(key);
+            if (pending != null && retry.claimId() != null && retry.claimId().equals(pending.claimId())) {
+                pendingRetries.remove(key);
+            }
+        }
+    }
+
+    public List<PendingRetry> pendingRetries() {
+        return List.copyOf(pendingRetries.values());
+    }
+
     // Transport queue methods
 
     @Override
@@ -221,22 +301,99 @@ public class EmbeddedDatabase implements Database {
                     payload,
                     TransportQueueEntry.STATUS_PENDING,
                     Instant.now()));
+            transportListeners.getOrDefault(subscriberId, List.of()).forEach(Runnable::run);
         }
     }
 
+    @Override
+    public Optional<ListenerRegistration> onTransportQueued(String subscriberId, Runnable listener) {
+        List<Runnable> listeners = transportListeners.computeIfAbsent(subscriberId,
+                id -> new CopyOnWriteArrayList<>());
+        listeners.add(listener);
+        return Optional.of(() -> listeners.remove(listener));
+    }
+
     @Override
     public List<TransportQueueEntry> pollTransportQueue(String subscriberId, int limit) {
         return transportQueue.stream()
                 .filter(e -> e.subscriberId().equals(subscriberId))
                 .filter(e -> TransportQueueEntry.STATUS_PENDING.equals(e.status()))
+                .filter(e -> !transportClaims.containsKey(e.id()))
                 .limit(limit)
                 .toList();
     }
 
     @Override
-    public void markTransportProcessed(String eventId, String subscriberId) {
+    public synchronized List<TransportQueueEntry> claimTransportQueue(String subscriberId, int limit,
+                                                                      Duration lease) {
+        Instant now = Instant.now();
+        UUID claimId = UUID.randomUUID();
+        List<TransportQueueEntry> claimed = new ArrayList<>();
+        for (TransportQueueEntry e : transportQueue) {
+            if (claimed.size() >= limit) {
+                break;
+            }
+            if (!e.subscriberId().equals(subscriberId) || !TransportQueueEntry.STATUS_PENDING.equals(e.status())) {
+                continue;
+            }
+            TransportClaim claim = transportClaims.get(e.id());
+            if (claim == null || claim.until().isBefore(now)) {
+                transportClaims.put(e.id(), new TransportClaim(claimId, now.plus(lease)));
+                claimed.add(new TransportQueueEntry(e.id(), e.eventId(), e.eventType(), e.subscriberId(),
+                        e.payload(), TransportQueueEntry.STATUS_CLAIMED, e.createdAt(), claimId));
+            }
+        }
+        return claimed;
+    }
+
+    @Override
+    public synchronized void releaseTransportClaim(TransportQueueEntry claimed) {
+        if (claimed.claimId() != null && holds(claimed)) {
+            transportClaims.remove(claimed.id());
+        }
+    }
+
+    @Override
+    public synchronized void markTransportProcessed(String eventId, String subscriberId) {
         // Remove and re-add with PROCESSED status
-        transportQueue.removeIf(e -> e.eventId().equals(eventId) && e.subscriberId().equals(subscriberId));
+        transportQueue.removeIf(e -> {
+            if (e.eventId().equals(eventId) && e.subscriberId().equals(subscriberId)) {
+                transportClaims.remove(e.id());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public synchronized void markTransportProcessed(List<TransportQueueEntry> entries) {
+        Set<Long> ids = new HashSet<>();
+        entries.stream().filter(this::holds).forEach(entry -> ids.add(entry.id()));
+        transportQueue.removeIf(e -> ids.contains(e.id()));
+        ids.forEach(transportClaims::remove);
+    }
+
+    /**
+     * Whether the entry's claim is still the current one, a polled entry holds its row while nobody claimed it.
+     */
+    private boolean holds(TransportQueueEntry entry) {
+        TransportClaim claim = transportClaims.get(entry.id());
+        return claim == null ? entry.claimId() == null : claim.id().equals(entry.claimId());
+    }
+
+    @Override
+    public TransportQueueStats transportQueueStats(String subscriberId) {
+        long depth = 0;
+        Instant oldest = null;
+        for (TransportQueueEntry e : transportQueue) {
+            if (e.subscriberId().equals(subscriberId) && TransportQueueEntry.STATUS_PENDING.equals(e.status())) {
+                depth++;
+                if (oldest == null || e.createdAt().isBefore(oldest)) {
+                    oldest = e.createdAt();
+                }
+            }
+        }
+        return new TransportQueueStats(depth, oldest);
     }
 
     @Override
@@ -264,11 +421,17 @@ public class EmbeddedDatabase implements Database {
      */
     public void clear() {
         subs.clear();
+        subscriptionsVersion.incrementAndGet();
         schemasByType.clear();
         receipts.clear();
         receiptIndex.clear();
         retries.clear();
         trippedCircuitsBySubId.clear();
         transportQueue.clear();
+        transportClaims.clear();
+        pendingRetries.clear();
+    }
+
+    private record TransportClaim(UUID id, Instant until) {
     }
 }
@@ -5,20 +5,30 @@ import com.kildeen.sps.Schemas;
 import com.kildeen.sps.SpsEvent;
 import com.kildeen.sps.persistence.Config;
 import com.kildeen.sps.persistence.Database;
+import com.kildeen.sps.persistence.ListenerRegistration;
+import com.kildeen.sps.persistence.PendingRetry;
+import com.kildeen.sps.persistence.TransportEvent;
 import com.kildeen.sps.persistence.TransportQueueEntry;
+import com.kildeen.sps.persistence.TransportQueueStats;
 import com.kildeen.sps.publish.Subscriptions;
 import org.jdbi.v3.core.Jdbi;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import static java.lang.invoke.MethodHandles.lookup;
 
@@ -28,10 +38,28 @@ import static java.lang.invoke.MethodHandles.lookup;
 public class PostgresDatabase implements Database {
     private static final Logger LOG = LoggerFactory.getLogger(lookup().lookupClass());
 
+    /** Channel the sps_subscriptions trigger notifies with the changed event type, see V3 migration */
+    static final String SUBSCRIPTIONS_CHANNEL = "sps_subscriptions_changed";
+
+    /** Channel the sps_transport_queue trigger notifies with the subscriber id of new entries, see V5 migration */
+    static final String TRANSPORT_CHANNEL = "sps_transport_queued";
+
     private final Jdbi jdbi;
+    private final PostgresNotificationListener notifications;
+    private final PostgresReceiptWriter receiptWriter;
 
+    /**
+     * Creates a database without change notifications or batched receipts, use {@link PostgresDatabaseFactory}
+     * to get them.
+     */
     public PostgresDatabase(Jdbi jdbi) {
+        this(jdbi, null, null);
+    }
+
+    PostgresDatabase(Jdbi jdbi, PostgresNotificationListener notifications, PostgresReceiptWriter receiptWriter) {
         this.jdbi = jdbi;
+        this.notifications = notifications;
+        this.receiptWriter = receiptWriter;
     }
 
     @Override
@@ -125,6 +153,14 @@ public class PostgresDatabase implements Database {
                         .execute());
     }
 
+    @Override
+    public CompletableFuture<Void> ackOrNackAsync(SpsEvent event, Receipt receipt) {
+        if (receiptWriter == null) {
+            return Database.super.ackOrNackAsync(event, receipt);
+        }
+        return receiptWriter.write(event, receipt);
+    }
+
     @Override
     public Subscriptions subscriptions(Set<String> eventTypes) {
         if (eventTypes.isEmpty()) {
@@ -155,6 +191,19 @@ public class PostgresDatabase implements Database {
         });
     }
 
+    @Override
+    public boolean pushesSubscriptionChanges() {
+        return notifications != null;
+    }
+
+    @Override
+    public Optional<ListenerRegistration> onSubscriptionsChanged(Consumer<String> listener) {
+        if (notifications == null) {
+            return Optional.empty();
+        }
+        return Optional.of(notifications.listen(SUBSCRIPTIONS_CHANNEL, listener));
+    }
+
     @Override
     public Config fetchConfig() {
         return jdbi.withHandle(handle -> {
@@ -184,6 +233,22 @@ public class PostgresDatabase implements Database {
         return hasReceipt(id, "ABANDONED");
     }
 
+    @Override
+    public Set<String> ackedIds(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return Set.of();
+        }
+
+        return jdbi.withHandle(handle -> new HashSet<>(
+                handle.createQuery("""
+                                SELECT DISTINCT event_id FROM sps_receipts
+                                WHERE event_id = ANY(:eventIds) AND receipt_type = 'ACK'
+                                """)
+                        .bind("eventIds", ids.toArray(new String[0]))
+                        .mapTo(String.class)
+                        .list()));
+    }
+
     private boolean hasReceipt(String id, String receiptType) {
         return jdbi.withHandle(handle ->
                 handle.createQuery("""
@@ -364,6 +429,102 @@ public class PostgresDatabase implements Database {
         });
     }
 
+    // Retry store
+
+    @Override
+    public boolean storesRetries() {
+        return true;
+    }
+
+    @Override
+    public boolean saveRetry(PendingRetry retry) {
+        return jdbi.withHandle(handle ->
+                handle.createUpdate("""
+                        INSERT INTO sps_retry_queue (event_id, event_type, subscriber_id, payload, retries,
+                                                     delivery_type, created_at, due_at)
+                        VALUES (:eventId, :eventType, :subscriberId, CAST(:payload AS jsonb), :retries,
+                                :deliveryType, :createdAt, :dueAt)
+                        ON CONFLICT (event_id, subscriber_id) DO UPDATE
+                        SET event_type = EXCLUDED.event_type, payload = EXCLUDED.payload,
+                            retries = EXCLUDED.retries, delivery_type = EXCLUDED.delivery_type,
+                            created_at = EXCLUDED.created_at, due_at = EXCLUDED.due_at, claim_id = NULL
+                        WHERE sps_retry_queue.claim_id IS NOT NULL
+                        """)
+                        .bind("eventId", retry.eventId())
+                        .bind("eventType", retry.eventType())
+                        .bind("subscriberId", retry.subscriberId())
+                        .bind("payload", retry.payload())
+                        .bind("retries", retry.retries())
+                        .bind("deliveryType", retry.deliveryType())
+                        .bind("createdAt", retry.createdAt())
+                        .bind("dueAt", retry.dueAt())
+                        .execute()) > 0;
+    }
+
+    @Override
+    public List<PendingRetry> claimDueRetries(int limit, Duration lease) {
+        UUID claimId = UUID.randomUUID();
+        return jdbi.withHandle(handle ->
+                handle.createQuery("""
+                        WITH claimed AS (
+                            UPDATE sps_retry_queue
+                            SET due_at = NOW() + :leaseMs * INTERVAL '1 millisecond', claim_id = :claimId
+                            WHERE id IN (
+                                SELECT id FROM sps_retry_queue
+                                WHERE due_at <= NOW()
+                                ORDER BY due_at ASC
+                                LIMIT :limit
+                                FOR UPDATE SKIP LOCKED)
+                            RETURNING event_id, event_type, subscriber_id, payload, retries, delivery_type,
+                                      created_at, due_at, claim_id
+                        )
+                        SELECT event_id, event_type, subscriber_id, payload::text, retries, delivery_type,
+                               created_at, due_at, claim_id
+                        FROM claimed
+                        """)
+                        .bind("claimId", claimId)
+                        .bind("limit", limit)
+                        .bind("leaseMs", lease.toMillis())
+                        .map((rs, ctx) -> new PendingRetry(
+                                rs.getString("event_id"),
+                                rs.getString("event_type"),
+                                rs.getString("subscriber_id"),
+                                rs.getString("payload"),
+                                rs.getInt("retries"),
+                                rs.getString("delivery_type"),
+                                rs.getTimestamp("created_at").toInstant(),
+                                rs.getTimestamp("due_at").toInstant(),
+                                rs.getObject("claim_id", UUID.class)))
+                        .list());
+    }
+
+    @Override
+    public void completeRetries(List<PendingRetry> retries) {
+        if (retries.isEmpty()) {
+            return;
+        }
+        int size = retries.size();
+        String[] eventIds = new String[size];
+        String[] subscriberIds = new String[size];
+        UUID[] claimIds = new UUID[size];
+        for (int i = 0; i < size; i++) {
+            eventIds[i] = retries.get(i).eventId();
+            subscriberIds[i] = retries.get(i).subscriberId();
+            claimIds[i] = retries.get(i).claimId();
+        }
+        jdbi.useHandle(handle ->
+                handle.createUpdate("""
+                        DELETE FROM sps_retry_queue r
+                        USING unnest(:eventIds, :subscriberIds, :claimIds) AS done(event_id, subscriber_id, claim_id)
+                        WHERE r.event_id = done.event_id AND r.subscriber_id = done.subscriber_id
+                          AND r.claim_id = done.claim_id
+                        """)
+                        .bind("eventIds", eventIds)
+                        .bind("subscriberIds", subscriberIds)
+                        .bind("claimIds", claimIds)
+                        .execute());
+    }
+
     // Transport queue methods
 
     @Override
@@ -381,6 +542,50 @@ public class PostgresDatabase implements Database {
                         .execute());
     }
 
+    @Override
+    public void insertTransportEvents(List<TransportEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        int size = events.size();
+        String[] eventIds = new String[size];
+        String[] eventTypes = new String[size];
+        String[] subscriberIds = new String[size];
+        String[] payloads = new String[size];
+        for (int i = 0; i < size; i++) {
+            TransportEvent event = events.get(i);
+            eventIds[i] = event.eventId();
+            eventTypes[i] = event.eventType();
+            subscriberIds[i] = event.subscriberId();
+            payloads[i] = event.payload();
+        }
+        jdbi.useHandle(handle ->
+                handle.createUpdate("""
+                        INSERT INTO sps_transport_queue (event_id, event_type, subscriber_id, payload, status)
+                        SELECT event_id, event_type, subscriber_id, CAST(payload AS jsonb), 'PENDING'
+                        FROM unnest(:eventIds, :eventTypes, :subscriberIds, :payloads)
+                            AS queued(event_id, event_type, subscriber_id, payload)
+                        ON CONFLICT (event_id, subscriber_id) DO NOTHING
+                        """)
+                        .bind("eventIds", eventIds)
+                        .bind("eventTypes", eventTypes)
+                        .bind("subscriberIds", subscriberIds)
+                        .bind("payloads", payloads)
+                        .execute());
+    }
+
+    @Override
+    public Optional<ListenerRegistration> onTransportQueued(String subscriberId, Runnable listener) {
+        if (notifications == null) {
+            return Optional.empty();
+        }
+        return Optional.of(notifications.listen(TRANSPORT_CHANNEL, queuedFor -> {
+            if (queuedFor == null || queuedFor.equals(subscriberId)) {
+                listener.run();
+            }
+        }));
+    }
+
     @Override
     public List<TransportQueueEntry> pollTransportQueue(String subscriberId, int limit) {
         return jdbi.withHandle(handle ->
@@ -404,12 +609,63 @@ public class PostgresDatabase implements Database {
                         .list());
     }
 
+    @Override
+    public List<TransportQueueEntry> claimTransportQueue(String subscriberId, int limit, Duration lease) {
+        UUID claimId = UUID.randomUUID();
+        return jdbi.withHandle(handle ->
+                handle.createQuery("""
+                        WITH claimed AS (
+                            UPDATE sps_transport_queue
+                            SET status = 'CLAIMED', claimed_until = NOW() + :leaseMs * INTERVAL '1 millisecond',
+                                claim_id = :claimId
+                            WHERE id IN (
+                                SELECT id FROM sps_transport_queue
+                                WHERE subscriber_id = :subscriberId
+                                  AND (status = 'PENDING' OR (status = 'CLAIMED' AND claimed_until < NOW()))
+                                ORDER BY created_at ASC
+                                LIMIT :limit
+                                FOR UPDATE SKIP LOCKED)
+                            RETURNING id, event_id, event_type, subscriber_id, payload, status, created_at, claim_id
+                        )
+                        SELECT id, event_id, event_type, subscriber_id, payload::text, status, created_at, claim_id
+                        FROM claimed
+                        ORDER BY created_at ASC, id ASC
+                        """)
+                        .bind("subscriberId", subscriberId)
+                        .bind("limit", limit)
+                        .bind("leaseMs", lease.toMillis())
+                        .bind("claimId", claimId)
+                        .map((rs, ctx) -> new TransportQueueEntry(
+                                rs.getLong("id"),
+                                rs.getString("event_id"),
+                                rs.getString("event_type"),
+                                rs.getString("subscriber_id"),
+                                rs.getString("payload"),
+                                rs.getString("status"),
+                                rs.getTimestamp("created_at").toInstant(),
+                                rs.getObject("claim_id", UUID.class)))
+                        .list());
+    }
+
+    @Override
+    public void releaseTransportClaim(TransportQueueEntry claimed) {
+        jdbi.useHandle(handle ->
+                handle.createUpdate("""
+                        UPDATE sps_transport_queue
+                        SET status = 'PENDING', claimed_until = NULL, claim_id = NULL
+                        WHERE id = :id AND status = 'CLAIMED' AND claim_id = :claimId
+                        """)
+                        .bind("id", claimed.id())
+                        .bind("claimId", claimed.claimId())
+                        .execute());
+    }
+
     @Override
     public void markTransportProcessed(String eventId, String subscriberId) {
         jdbi.useHandle(handle ->
                 handle.createUpdate("""
                         UPDATE sps_transport_queue
-                        SET status = 'PROCESSED', processed_at = NOW()
+                        SET status = 'PROCESSED', processed_at = NOW(), claimed_until = NULL
                         WHERE event_id = :eventId AND subscriber_id = :subscriberId
                         """)
                         .bind("eventId", eventId)
@@ -417,6 +673,49 @@ public class PostgresDatabase implements Database {
                         .execute());
     }
 
+    @Override
+    public void markTransportProcessed(List<TransportQueueEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        int size = entries.size();
+        Long[] ids = new Long[size];
+        UUID[] claimIds = new UUID[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = entries.get(i).id();
+            claimIds[i] = entries.get(i).claimId();
+        }
+        // Polled entries carry no claim and only match rows nobody has claimed since
+        jdbi.useHandle(handle ->
+                handle.createUpdate("""
+                        UPDATE sps_transport_queue q
+                        SET status = 'PROCESSED', processed_at = NOW(), claimed_until = NULL
+                        FROM unnest(:ids, :claimIds) AS done(id, claim_id)
+                        WHERE q.id = done.id
+                          AND q.claim_id IS NOT DISTINCT FROM done.claim_id
+                        """)
+                        .bind("ids", ids)
+                        .bind("claimIds", claimIds)
+                        .execute());
+    }
+
+    @Override
+    public TransportQueueStats transportQueueStats(String subscriberId) {
+        return jdbi.withHandle(handle ->
+                handle.createQuery("""
+                        SELECT COUNT(*) AS depth, MIN(created_at) AS oldest
+                        FROM sps_transport_queue
+                        WHERE subscriber_id = :subscriberId AND status IN ('PENDING', 'CLAIMED')
+                        """)
+                        .bind("subscriberId", subscriberId)
+                        .map((rs, ctx) -> {
+                            Timestamp oldest = rs.getTimestamp("oldest");
+                            return new TransportQueueStats(rs.getLong("depth"),
+                                    oldest == null ? null : oldest.toInstant());
+                        })
+                        .one());
+    }
+
     @Override
     public int cleanupTransportQueue(Instant olderThan) {
         return jdbi.withHandle(handle ->
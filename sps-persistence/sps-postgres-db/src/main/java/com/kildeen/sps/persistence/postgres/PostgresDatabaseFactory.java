@@ -8,6 +8,9 @@ import org.jdbi.v3.postgres.PostgresPlugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.DriverManager;
+import java.time.Duration;
+
 import static java.lang.invoke.MethodHandles.lookup;
 
 /**
@@ -20,9 +23,13 @@ public class PostgresDatabaseFactory {
     private final String username;
     private final String password;
     private final int maxPoolSize;
+    private final int receiptBatchSize;
+    private final Duration receiptFlushInterval;
 
     private HikariDataSource dataSource;
     private Jdbi jdbi;
+    private PostgresNotificationListener notifications;
+    private PostgresReceiptWriter receiptWriter;
     private PostgresDatabase database;
 
     public PostgresDatabaseFactory(String jdbcUrl, String username, String password) {
@@ -30,10 +37,21 @@ public class PostgresDatabaseFactory {
     }
 
     public PostgresDatabaseFactory(String jdbcUrl, String username, String password, int maxPoolSize) {
+        this(jdbcUrl, username, password, maxPoolSize, 500, Duration.ofMillis(5));
+    }
+
+    /**
+     * @param receiptBatchSize max receipts per INSERT, 0 writes every receipt on its own
+     * @param receiptFlushInterval max time a receipt waits for its batch to fill up
+     */
+    public PostgresDatabaseFactory(String jdbcUrl, String username, String password, int maxPoolSize,
+                                   int receiptBatchSize, Duration receiptFlushInterval) {
         this.jdbcUrl = jdbcUrl;
         this.username = username;
         this.password = password;
         this.maxPoolSize = maxPoolSize;
+        this.receiptBatchSize = receiptBatchSize;
+        this.receiptFlushInterval = receiptFlushInterval;
     }
 
     /**
@@ -45,7 +63,13 @@ public class PostgresDatabaseFactory {
         migrate();
         initConnectionPool();
 
-        database = new PostgresDatabase(jdbi);
+        // LISTEN needs a connection of its own for as long as it listens, so it stays outside the pool
+        notifications = new PostgresNotificationListener(
+                () -> DriverManager.getConnection(jdbcUrl, username, password));
+        if (receiptBatchSize > 0) {
+            receiptWriter = new PostgresReceiptWriter(jdbi, receiptBatchSize, receiptFlushInterval);
+        }
+        database = new PostgresDatabase(jdbi, notifications, receiptWriter);
         LOG.info("PostgreSQL database initialized successfully");
 
         return database;
@@ -110,6 +134,12 @@ public class PostgresDatabaseFactory {
      * Shuts down the connection pool.
      */
     public void shutdown() {
+        if (notifications != null) {
+            notifications.close();
+        }
+        if (receiptWriter != null) {
+            receiptWriter.close();
+        }
         if (dataSource != null && !dataSource.isClosed()) {
             LOG.info("Shutting down database connection pool");
             dataSource.close();
@@ -128,6 +158,8 @@ public class PostgresDatabaseFactory {
         private String username;
         private String password;
         private int maxPoolSize = 10;
+        private int receiptBatchSize = 500;
+        private Duration receiptFlushInterval = Duration.ofMillis(5);
 
         public Builder withJdbcUrl(String jdbcUrl) {
             this.jdbcUrl = jdbcUrl;
@@ -149,11 +181,22 @@ public class PostgresDatabaseFactory {
             return this;
         }
 
+        /**
+         * Receipts recorded with ackOrNackAsync are written in batches of up to batchSize, each batch waiting at
+         * most flushInterval for more receipts. A batchSize of 0 writes every receipt on its own.
+         */
+        public Builder withReceiptBatching(int batchSize, Duration flushInterval) {
+            this.receiptBatchSize = batchSize;
+            this.receiptFlushInterval = flushInterval;
+            return this;
+        }
+
         public PostgresDatabaseFactory build() {
             if (jdbcUrl == null || username == null || password == null) {
                 throw new IllegalStateException("jdbcUrl, username, and password are required");
             }
-            return new PostgresDatabaseFactory(jdbcUrl, username, password, maxPoolSize);
+            return new PostgresDatabaseFactory(jdbcUrl, username, password, maxPoolSize,
+                    receiptBatchSize, receiptFlushInterval);
         }
     }
 }
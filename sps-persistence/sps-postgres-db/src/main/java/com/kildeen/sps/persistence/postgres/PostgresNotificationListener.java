@@ -0,0 +1,132 @@
+package com.kildeen.sps.persistence.postgres;
+
+import com.kildeen.sps.persistence.ListenerRegistration;
+import org.jdbi.v3.core.ConnectionFactory;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static java.lang.invoke.MethodHandles.lookup;
+
+/**
+ * Receives Postgres NOTIFY messages on a dedicated connection and hands the payloads to the listeners of each
+ * channel.
+ *
+ * <p>Notifications sent while the connection is down are lost, so listeners are called with null whenever their
+ * channel is (re)subscribed.
+ */
+final class PostgresNotificationListener implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(lookup().lookupClass());
+    private static final int POLL_TIMEOUT_MS = 500;
+    private static final long RECONNECT_DELAY_MS = 1000;
+
+    private final ConnectionFactory connectionFactory;
+    private final Map<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private Thread thread;
+
+    PostgresNotificationListener(ConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * Calls the listener with the payload of every notification on the channel, or null when notifications may
+     * have been missed.
+     *
+     * @return removes the listener, the channel stays subscribed
+     */
+    ListenerRegistration listen(String channel, Consumer<String> listener) {
+        List<Consumer<String>> channelListeners =
+                listeners.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>());
+        channelListeners.add(listener);
+        start();
+        return () -> channelListeners.remove(listener);
+    }
+
+    private synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = Thread.ofPlatform()
+                .name("sps-postgres-notifications")
+                .daemon()
+                .start(this::run);
+    }
+
+    private void run() {
+        while (running) {
+            try (Connection connection = connectionFactory.openConnection()) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                Set<String> listening = new HashSet<>();
+                while (running) {
+                    listenToNewChannels(connection, listening);
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            String payload = notification.getParameter();
+                            dispatch(notification.getName(), payload == null || payload.isEmpty() ? null : payload);
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (running) {
+                    LOG.warn("Lost notification connection, reconnecting in {} ms", RECONNECT_DELAY_MS, e);
+                    sleepBeforeReconnect();
+                }
+            }
+        }
+    }
+
+    private void listenToNewChannels(Connection connection, Set<String> listening) throws SQLException {
+        for (String channel : listeners.keySet()) {
+            if (listening.add(channel)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                LOG.debug("Listening for notifications on {}", channel);
+                dispatch(channel, null);
+            }
+        }
+    }
+
+    private void dispatch(String channel, String payload) {
+        for (Consumer<String> listener : listeners.getOrDefault(channel, List.of())) {
+            try {
+                listener.accept(payload);
+            } catch (RuntimeException e) {
+                LOG.warn("Notification listener on {} failed", channel, e);
+            }
+        }
+    }
+
+    private void sleepBeforeReconnect() {
+        try {
+            Thread.sleep(RECONNECT_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.kildeen.sps.persistence.postgres;
+
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+import org.jdbi.v3.core.Jdbi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.invoke.MethodHandles.lookup;
+
+/**
+ * Buffers receipts and writes them to sps_receipts with one multi-row INSERT per batch.
+ *
+ * <p>A batch is flushed once it holds maxBatchSize receipts or flushInterval after its first receipt arrived,
+ * whichever comes first. Each receipt's future completes when its batch is committed.
+ */
+final class PostgresReceiptWriter implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(lookup().lookupClass());
+    private static final long IDLE_POLL_MS = 100;
+
+    private final Jdbi jdbi;
+    private final int maxBatchSize;
+    private final long flushIntervalNanos;
+    private final BlockingQueue<PendingReceipt> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    PostgresReceiptWriter(Jdbi jdbi, int maxBatchSize, Duration flushInterval) {
+        this.jdbi = jdbi;
+        this.maxBatchSize = maxBatchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.flusher = Thread.ofPlatform()
+                .name("sps-receipt-writer")
+                .daemon()
+                .start(this::run);
+    }
+
+    CompletableFuture<Void> write(SpsEvent event, Receipt receipt) {
+        PendingReceipt pending = new PendingReceipt(event.id(), event.type(), receipt.name(),
+                new CompletableFuture<>());
+        if (!running) {
+            pending.written().completeExceptionally(new IllegalStateException("Receipt writer is closed"));
+            return pending.written();
+        }
+        queue.add(pending);
+        return pending.written();
+    }
+
+    private void run() {
+        List<PendingReceipt> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingReceipt first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingReceipt next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Nobody should interrupt the flusher, stop but still write what has been accepted
+                Thread.currentThread().interrupt();
+                running = false;
+                queue.drainTo(batch, maxBatchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingReceipt> batch) {
+        int size = batch.size();
+        String[] eventIds = new String[size];
+        String[] eventTypes = new String[size];
+        String[] receiptTypes = new String[size];
+        for (int i = 0; i < size; i++) {
+            PendingReceipt pending = batch.get(i);
+            eventIds[i] = pending.eventId();
+            eventTypes[i] = pending.eventType();
+            receiptTypes[i] = pending.receiptType();
+        }
+
+        try {
+            jdbi.useHandle(handle ->
+                    handle.createUpdate("""
+                                    INSERT INTO sps_receipts (event_id, event_type, receipt_type)
+                                    SELECT * FROM unnest(:eventIds, :eventTypes, :receiptTypes)
+                                    """)
+                            .bind("eventIds", eventIds)
+                            .bind("eventTypes", eventTypes)
+                            .bind("receiptTypes", receiptTypes)
+                            .execute());
+        } catch (RuntimeException e) {
+            LOG.error("Failed to write {} receipts", size, e);
+            batch.forEach(pending -> pending.written().completeExceptionally(e));
+            return;
+        }
+        batch.forEach(pending -> pending.written().complete(null));
+    }
+
+    /**
+     * Stops accepting receipts and waits for the buffered ones to be written.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Raced with close() after the flusher stopped
+        PendingReceipt late;
+        while ((late = queue.poll()) != null) {
+            late.written().completeExceptionally(new IllegalStateException("Receipt writer is closed"));
+        }
+    }
+
+    private record PendingReceipt(String eventId, String eventType, String receiptType,
+                                  CompletableFuture<Void> written) {
+    }
+}
@@ -0,0 +1,26 @@
+-- Notify listeners when subscriptions change so publishers can invalidate cached subscriptions.
+-- The payload is the changed event type, empty when the whole table was truncated.
+
+CREATE OR REPLACE FUNCTION sps_notify_subscriptions_changed() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'TRUNCATE' THEN
+        PERFORM pg_notify('sps_subscriptions_changed', '');
+    ELSIF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('sps_subscriptions_changed', OLD.event_type);
+    ELSE
+        PERFORM pg_notify('sps_subscriptions_changed', NEW.event_type);
+        IF TG_OP = 'UPDATE' AND OLD.event_type <> NEW.event_type THEN
+            PERFORM pg_notify('sps_subscriptions_changed', OLD.event_type);
+        END IF;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER sps_subscriptions_changed
+    AFTER INSERT OR UPDATE OR DELETE ON sps_subscriptions
+    FOR EACH ROW EXECUTE FUNCTION sps_notify_subscriptions_changed();
+
+CREATE TRIGGER sps_subscriptions_truncated
+    AFTER TRUNCATE ON sps_subscriptions
+    FOR EACH STATEMENT EXECUTE FUNCTION sps_notify_subscriptions_changed();
@@ -0,0 +1,12 @@
+-- Claim-based polling of the transport queue
+-- Pollers claim rows with FOR UPDATE SKIP LOCKED and a lease, so several pollers can share a subscriber
+
+ALTER TABLE sps_transport_queue DROP CONSTRAINT IF EXISTS sps_transport_queue_status_check;
+ALTER TABLE sps_transport_queue ADD CONSTRAINT sps_transport_queue_status_check
+    CHECK (status IN ('PENDING', 'CLAIMED', 'PROCESSED', 'FAILED'));
+
+ALTER TABLE sps_transport_queue ADD COLUMN IF NOT EXISTS claimed_until TIMESTAMP WITH TIME ZONE;
+
+-- Only claimable rows, keeps the claim query off the processed backlog
+CREATE INDEX idx_transport_queue_claimable ON sps_transport_queue(subscriber_id, created_at)
+    WHERE status IN ('PENDING', 'CLAIMED');
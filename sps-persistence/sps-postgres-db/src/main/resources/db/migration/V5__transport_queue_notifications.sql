@@ -0,0 +1,13 @@
+-- Notify transport queue pollers when entries are queued so they do not have to wait for their poll interval.
+-- The payload is the subscriber id, Postgres folds repeated notifications within a transaction into one.
+
+CREATE OR REPLACE FUNCTION sps_notify_transport_queued() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('sps_transport_queued', NEW.subscriber_id);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER sps_transport_queued
+    AFTER INSERT ON sps_transport_queue
+    FOR EACH ROW EXECUTE FUNCTION sps_notify_transport_queued();
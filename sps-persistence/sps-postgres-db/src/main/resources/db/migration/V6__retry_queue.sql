@@ -0,0 +1,19 @@
+-- Durable retries for RetentionType.PERSISTENT
+-- Publishers claim due rows with FOR UPDATE SKIP LOCKED. A claim moves due_at forward by the lease, so rows of a
+-- publisher that stopped become due again for the others.
+
+CREATE TABLE IF NOT EXISTS sps_retry_queue (
+    id BIGSERIAL PRIMARY KEY,
+    event_id VARCHAR(512) NOT NULL,
+    event_type VARCHAR(255) NOT NULL,
+    subscriber_id VARCHAR(255) NOT NULL,
+    payload JSONB NOT NULL,
+    retries INT NOT NULL,
+    delivery_type VARCHAR(20) NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    due_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    claim_id UUID,
+    UNIQUE(event_id, subscriber_id)
+);
+
+CREATE INDEX idx_retry_queue_due ON sps_retry_queue(due_at);
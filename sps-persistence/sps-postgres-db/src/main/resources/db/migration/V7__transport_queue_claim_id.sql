@@ -0,0 +1,5 @@
+-- Claim token of the poller holding a transport queue row
+-- Release and processed only apply while the token matches, so a poller whose lease expired cannot touch a row
+-- another poller has claimed since
+
+ALTER TABLE sps_transport_queue ADD COLUMN IF NOT EXISTS claim_id UUID;
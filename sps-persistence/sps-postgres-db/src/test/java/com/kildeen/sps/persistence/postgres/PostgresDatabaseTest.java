@@ -4,6 +4,11 @@ import com.kildeen.sps.Receipt;
 import com.kildeen.sps.Schemas;
 import com.kildeen.sps.SpsEvent;
 import com.kildeen.sps.persistence.Config;
+import com.kildeen.sps.persistence.ListenerRegistration;
+import com.kildeen.sps.persistence.PendingRetry;
+import com.kildeen.sps.persistence.TransportEvent;
+import com.kildeen.sps.persistence.TransportQueueEntry;
+import com.kildeen.sps.persistence.TransportQueueStats;
 import com.kildeen.sps.publish.Subscriptions;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -16,9 +21,17 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -58,7 +71,7 @@ class PostgresDatabaseTest {
     @BeforeEach
     void cleanTables() {
         factory.getJdbi().useHandle(handle -> {
-            handle.execute("TRUNCATE sps_subscriptions, sps_schemas, sps_receipts, sps_circuit_breakers, sps_leader CASCADE");
+            handle.execute("TRUNCATE sps_subscriptions, sps_schemas, sps_receipts, sps_circuit_breakers, sps_leader, sps_transport_queue, sps_retry_queue CASCADE");
         });
     }
 
@@ -130,6 +143,36 @@ class PostgresDatabaseTest {
         }
     }
 
+    @Nested
+    @DisplayName("Subscription Change Notifications")
+    class SubscriptionChangeNotifications {
+
+        @Test
+        @DisplayName("Should notify the changed event type")
+        void notifyChangedEventType() throws InterruptedException {
+            BlockingQueue<String> changed = new LinkedBlockingQueue<>();
+            assertThat(database.pushesSubscriptionChanges()).isTrue();
+            ListenerRegistration registration = database.onSubscriptionsChanged(eventType ->
+                    changed.add(eventType == null ? "*" : eventType)).orElseThrow();
+
+            // Subscribing reports that changes may have been missed before anything else
+            assertThat(changed.poll(10, TimeUnit.SECONDS)).isEqualTo("*");
+
+            database.addSubscription(new Subscriptions.Subscription(
+                    new Subscriptions.Subscription.Subscriber("sub-n", "http://n"),
+                    "notified.event", Map.of()));
+
+            assertThat(changed.poll(10, TimeUnit.SECONDS)).isEqualTo("notified.event");
+
+            registration.close();
+            database.addSubscription(new Subscriptions.Subscription(
+                    new Subscriptions.Subscription.Subscriber("sub-m", "http://m"),
+                    "notified.event", Map.of()));
+
+            assertThat(changed.poll(500, TimeUnit.MILLISECONDS)).isNull();
+        }
+    }
+
     @Nested
     @DisplayName("Schema Operations")
     class SchemaOperations {
@@ -217,6 +260,35 @@ class PostgresDatabaseTest {
 
             assertThat(database.isAbandoned("abandoned-1")).isTrue();
         }
+
+        @Test
+        @DisplayName("Should resolve acked ids for a batch")
+        void resolveAckedIds() {
+            database.ackOrNack(testEvent("batch-acked"), Receipt.ACK);
+            database.ackOrNack(testEvent("batch-acked"), Receipt.ACK);
+            database.ackOrNack(testEvent("batch-nacked"), Receipt.NACK);
+
+            Set<String> acked = database.ackedIds(List.of("batch-acked", "batch-nacked", "batch-unknown"));
+
+            assertThat(acked).containsExactly("batch-acked");
+        }
+
+        @Test
+        @DisplayName("Should write buffered receipts once their futures complete")
+        void writeBufferedReceipts() {
+            List<CompletableFuture<Void>> written = new ArrayList<>();
+            for (int i = 0; i < 1200; i++) {
+                Receipt receipt = i % 2 == 0 ? Receipt.ACK : Receipt.NACK;
+                written.add(database.ackOrNackAsync(testEvent("buffered-" + i), receipt));
+            }
+
+            CompletableFuture.allOf(written.toArray(new CompletableFuture<?>[0])).join();
+
+            assertThat(database.isAck("buffered-0")).isTrue();
+            assertThat(database.isNack("buffered-1")).isTrue();
+            assertThat(database.isAck("buffered-1198")).isTrue();
+            assertThat(database.nackCount("buffered-1199")).isEqualTo(1);
+        }
     }
 
     @Nested
@@ -289,6 +361,221 @@ class PostgresDatabaseTest {
         }
     }
 
+    @Nested
+    @DisplayName("Transport Queue Operations")
+    class TransportQueueOperations {
+
+        @Test
+        @DisplayName("Should insert a batch of events and skip ones already queued")
+        void insertBatch() {
+            database.insertTransportEvent("bulk-1", "test.event", "sub-1", "{}");
+
+            database.insertTransportEvents(List.of(
+                    new TransportEvent("bulk-1", "test.event", "sub-1", "{\"changed\":true}"),
+                    new TransportEvent("bulk-2", "test.event", "sub-1", "{\"n\":2}"),
+                    new TransportEvent("bulk-2", "test.event", "sub-1", "{\"n\":2}"),
+                    new TransportEvent("bulk-1", "test.event", "sub-2", "{}")));
+
+            List<TransportQueueEntry> queued = database.pollTransportQueue("sub-1", 10);
+            assertThat(queued).extracting(TransportQueueEntry::eventId).containsExactly("bulk-1", "bulk-2");
+            assertThat(queued.get(0).payload()).isEqualTo("{}");
+            assertThat(database.pollTransportQueue("sub-2", 10)).hasSize(1);
+        }
+
+        @Test
+        @DisplayName("Should not hand a claimed entry to another poller until its lease expires")
+        void claimWithLease() throws InterruptedException {
+            database.insertTransportEvent("claim-1", "test.event", "sub-1", "{}");
+            database.insertTransportEvent("claim-2", "test.event", "sub-1", "{}");
+
+            List<TransportQueueEntry> first = database.claimTransportQueue("sub-1", 1, Duration.ofMillis(200));
+            List<TransportQueueEntry> second = database.claimTransportQueue("sub-1", 10, Duration.ofMinutes(1));
+
+            assertThat(first).extracting(TransportQueueEntry::eventId).containsExactly("claim-1");
+            assertThat(first).extracting(TransportQueueEntry::status).containsExactly("CLAIMED");
+            assertThat(second).extracting(TransportQueueEntry::eventId).containsExactly("claim-2");
+            assertThat(database.pollTransportQueue("sub-1", 10)).isEmpty();
+
+            Thread.sleep(300);
+
+            assertThat(database.claimTransportQueue("sub-1", 10, Duration.ofMinutes(1)))
+                    .extracting(TransportQueueEntry::eventId).containsExactly("claim-1");
+        }
+
+        @Test
+        @DisplayName("Should notify the subscriber's listener when an entry is queued")
+        void notifyQueuedEntry() throws InterruptedException {
+            BlockingQueue<String> woken = new LinkedBlockingQueue<>();
+            assertThat(database.onTransportQueued("sub-1", () -> woken.add("sub-1"))).isPresent();
+            database.onTransportQueued("sub-2", () -> woken.add("sub-2"));
+
+            // Subscribing reports that entries may have been missed before anything else
+            assertThat(woken.poll(10, TimeUnit.SECONDS)).isNotNull();
+            assertThat(woken.poll(10, TimeUnit.SECONDS)).isNotNull();
+
+            database.insertTransportEvent("notify-1", "test.event", "sub-1", "{}");
+
+            assertThat(woken.poll(10, TimeUnit.SECONDS)).isEqualTo("sub-1");
+            assertThat(woken.poll(200, TimeUnit.MILLISECONDS)).isNull();
+        }
+
+        @Test
+        @DisplayName("Should report depth and oldest entry of unprocessed entries")
+        void reportStats() {
+            database.insertTransportEvent("stats-1", "test.event", "sub-1", "{}");
+            database.insertTransportEvent("stats-2", "test.event", "sub-1", "{}");
+            database.insertTransportEvent("stats-3", "test.event", "sub-2", "{}");
+            database.claimTransportQueue("sub-1", 1, Duration.ofMinutes(1));
+            database.markTransportProcessed("stats-2", "sub-1");
+
+            TransportQueueStats stats = database.transportQueueStats("sub-1");
+
+            assertThat(stats.depth()).isEqualTo(1);
+            assertThat(stats.oldestQueuedAt()).isNotNull();
+            assertThat(database.transportQueueStats("sub-3")).isEqualTo(TransportQueueStats.EMPTY);
+        }
+
+        @Test
+        @DisplayName("Should mark a batch of claimed entries as processed")
+        void markBatchProcessed() {
+            database.insertTransportEvent("mark-1", "test.event", "sub-1", "{}");
+            database.insertTransportEvent("mark-2", "test.event", "sub-1", "{}");
+            database.insertTransportEvent("mark-3", "test.event", "sub-1", "{}");
+            List<TransportQueueEntry> claimed = database.claimTransportQueue("sub-1", 2, Duration.ofMillis(1));
+
+            database.markTransportProcessed(claimed);
+
+            assertThat(database.transportQueueStats("sub-1").depth()).isEqualTo(1);
+            assertThat(database.claimTransportQueue("sub-1", 10, Duration.ofMinutes(1)))
+                    .extracting(TransportQueueEntry::eventId).containsExactly("mark-3");
+        }
+
+        @Test
+        @DisplayName("Should make a released entry claimable again")
+        void releaseClaim() {
+            database.insertTransportEvent("release-1", "test.event", "sub-1", "{}");
+            List<TransportQueueEntry> claimed = database.claimTransportQueue("sub-1", 10, Duration.ofMinutes(1));
+
+            database.releaseTransportClaim(claimed.getFirst());
+
+            assertThat(database.claimTransportQueue("sub-1", 10, Duration.ofMinutes(1)))
+                    .extracting(TransportQueueEntry::eventId).containsExactly("release-1");
+        }
+
+        @Test
+        @DisplayName("Should ignore release and processed from a poller whose claim expired")
+        void staleClaim() throws InterruptedException {
+            database.insertTransportEvent("stale-1", "test.event", "sub-1", "{}");
+            List<TransportQueueEntry> stale = database.claimTransportQueue("sub-1", 10, Duration.ofMillis(100));
+            Thread.sleep(200);
+            List<TransportQueueEntry> current = database.claimTransportQueue("sub-1", 10, Duration.ofMinutes(1));
+
+            database.releaseTransportClaim(stale.getFirst());
+            database.markTransportProcessed(stale);
+
+            assertThat(current).extracting(TransportQueueEntry::eventId).containsExactly("stale-1");
+            assertThat(database.transportQueueStats("sub-1").depth()).isEqualTo(1);
+            assertThat(database.claimTransportQueue("sub-1", 10, Duration.ofMinutes(1))).isEmpty();
+
+            database.markTransportProcessed(current);
+
+            assertThat(database.transportQueueStats("sub-1").depth()).isZero();
+        }
+
+        @Test
+        @DisplayName("Should claim every entry exactly once across concurrent pollers")
+        void concurrentClaims() {
+            for (int i = 0; i < 100; i++) {
+                database.insertTransportEvent("concurrent-" + i, "test.event", "sub-1", "{}");
+            }
+
+            List<CompletableFuture<List<TransportQueueEntry>>> claims = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                claims.add(CompletableFuture.supplyAsync(() ->
+                        database.claimTransportQueue("sub-1", 40, Duration.ofMinutes(1))));
+            }
+            List<String> claimed = claims.stream()
+                    .flatMap(claim -> claim.join().stream())
+                    .map(TransportQueueEntry::eventId)
+                    .toList();
+
+            assertThat(claimed).hasSize(100).doesNotHaveDuplicates();
+        }
+    }
+
+    @Nested
+    @DisplayName("Retry Queue Operations")
+    class RetryQueueOperations {
+
+        @Test
+        @DisplayName("Should claim only due retries and hide them until completed")
+        void claimDueRetries() {
+            database.saveRetry(retry("due-1", Instant.now().minusSeconds(1)));
+            database.saveRetry(retry("later-1", Instant.now().plusSeconds(60)));
+
+            List<PendingRetry> claimed = database.claimDueRetries(10, Duration.ofMinutes(1));
+
+            assertThat(claimed).extracting(PendingRetry::eventId).containsExactly("due-1");
+            assertThat(claimed.getFirst().claimId()).isNotNull();
+            assertThat(claimed.getFirst().payload()).contains("due-1");
+            assertThat(database.claimDueRetries(10, Duration.ofMinutes(1))).isEmpty();
+
+            database.completeRetries(claimed);
+            int remaining = factory.getJdbi().withHandle(handle ->
+                    handle.createQuery("SELECT COUNT(*) FROM sps_retry_queue").mapTo(Integer.class).one());
+            assertThat(remaining).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("Should reclaim retries whose lease expired")
+        void reclaimExpiredLease() throws InterruptedException {
+            database.saveRetry(retry("lease-1", Instant.now().minusSeconds(1)));
+
+            PendingRetry first = database.claimDueRetries(10, Duration.ofMillis(100)).getFirst();
+            Thread.sleep(200);
+            PendingRetry second = database.claimDueRetries(10, Duration.ofMinutes(1)).getFirst();
+
+            assertThat(second.claimId()).isNotEqualTo(first.claimId());
+            database.completeRetries(List.of(first));
+            int remaining = factory.getJdbi().withHandle(handle ->
+                    handle.createQuery("SELECT COUNT(*) FROM sps_retry_queue").mapTo(Integer.class).one());
+            assertThat(remaining).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("Should keep a retry saved again while claimed when the claim completes")
+        void saveAgainWhileClaimed() {
+            database.saveRetry(retry("again-1", Instant.now().minusSeconds(1)));
+            PendingRetry claimed = database.claimDueRetries(10, Duration.ofMinutes(1)).getFirst();
+
+            boolean saved = database.saveRetry(new PendingRetry("again-1", "test.event", "sub-1", claimed.payload(),
+                    2, "HTTP", claimed.createdAt(), Instant.now().minusSeconds(1), null));
+            database.completeRetries(List.of(claimed));
+
+            assertThat(saved).isTrue();
+
+            assertThat(database.claimDueRetries(10, Duration.ofMinutes(1)))
+                    .singleElement()
+                    .extracting(PendingRetry::retries)
+                    .isEqualTo(2);
+        }
+
+        @Test
+        @DisplayName("Should report a retry skipped because the same one is pending")
+        void saveAgainWhilePending() {
+            assertThat(database.saveRetry(retry("pending-1", Instant.now().plusSeconds(60)))).isTrue();
+
+            assertThat(database.saveRetry(retry("pending-1", Instant.now().minusSeconds(1)))).isFalse();
+            assertThat(database.claimDueRetries(10, Duration.ofMinutes(1))).isEmpty();
+        }
+
+        private PendingRetry retry(String eventId, Instant dueAt) {
+            String payload = "{\"eventType\":\"test.event\",\"spsEvents\":[{\"type\":\"test.event\",\"id\":\""
+                    + eventId + "\",\"data\":{}}]}";
+            return new PendingRetry(eventId, "test.event", "sub-1", payload, 1, "HTTP", Instant.now(), dueAt, null);
+        }
+    }
+
     @Nested
     @DisplayName("Config Operations")
     class ConfigOperations {
@@ -0,0 +1,151 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.sps.persistence.Database;
+import com.kildeen.sps.persistence.ListenerRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.invoke.MethodHandles.lookup;
+
+/**
+ * Caches subscriptions per event type in front of another {@link FetchSubscriptions}.
+ *
+ * <p>Entries expire after the TTL and the least recently used event types are evicted once more than
+ * maxEventTypes are cached. Databases that push changes through {@link Database#onSubscriptionsChanged}
+ * invalidate the changed event types as they happen. Otherwise {@link Database#subscriptionsVersion()} is polled
+ * on every fetch and a new version drops the whole cache. Without either, entries live until they expire.
+ *
+ * <p>Close the cache to remove its listener from the database.
+ */
+public class CachingFetchSubscriptions implements FetchSubscriptions, AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(lookup().lookupClass());
+
+    private final FetchSubscriptions delegate;
+    private final Database database;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries;
+    private volatile ListenerRegistration registration;
+    private volatile long version;
+    /** Bumped on every invalidation so loads that raced with one are not cached, guarded by entries */
+    private long generation;
+
+    private CachingFetchSubscriptions(FetchSubscriptions delegate, Database database, Duration ttl,
+                                      int maxEventTypes) {
+        this.delegate = delegate;
+        this.database = database;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEventTypes;
+            }
+        };
+        this.version = database.subscriptionsVersion();
+    }
+
+    /**
+     * Creates the cache and registers it for the changes the database pushes.
+     */
+    public static CachingFetchSubscriptions create(FetchSubscriptions delegate, Database database, Duration ttl,
+                                                   int maxEventTypes) {
+        CachingFetchSubscriptions cache = new CachingFetchSubscriptions(delegate, database, ttl, maxEventTypes);
+        cache.registration = database.onSubscriptionsChanged(cache::invalidate).orElse(null);
+        if (cache.registration == null && cache.version < 0) {
+            LOG.info("Database does not signal subscription changes, cached subscriptions live for {}", ttl);
+        }
+        return cache;
+    }
+
+    @Override
+    public Subscriptions fetchSubscriptions(Set<String> eventTypes) {
+        pollVersion();
+
+        List<Subscriptions.Subscription> result = new ArrayList<>();
+        Set<String> missing = null;
+        long loadGeneration;
+        long now = System.nanoTime();
+        synchronized (entries) {
+            for (String eventType : eventTypes) {
+                Entry entry = entries.get(eventType);
+                if (entry != null && now - entry.loadedAt() < ttlNanos) {
+                    result.addAll(entry.subscriptions());
+                } else {
+                    if (missing == null) {
+                        missing = new HashSet<>();
+                    }
+                    missing.add(eventType);
+                }
+            }
+            loadGeneration = generation;
+        }
+        if (missing == null) {
+            return new Subscriptions(result);
+        }
+
+        Map<String, List<Subscriptions.Subscription>> loaded = new HashMap<>();
+        for (Subscriptions.Subscription subscription : delegate.fetchSubscriptions(missing).subscriptions()) {
+            loaded.computeIfAbsent(subscription.eventType(), type -> new ArrayList<>()).add(subscription);
+        }
+        synchronized (entries) {
+            for (String eventType : missing) {
+                // Event types without subscriptions are cached too, they go to schema generation on every publish
+                List<Subscriptions.Subscription> subscriptions = loaded.getOrDefault(eventType, List.of());
+                if (loadGeneration == generation) {
+                    entries.put(eventType, new Entry(subscriptions, now));
+                }
+                result.addAll(subscriptions);
+            }
+        }
+        return new Subscriptions(result);
+    }
+
+    @Override
+    public String fetchSubscriptions() {
+        return delegate.fetchSubscriptions();
+    }
+
+    /**
+     * Drops the cached subscriptions of one event type, or all of them when eventType is null.
+     */
+    public void invalidate(String eventType) {
+        synchronized (entries) {
+            generation++;
+            if (eventType == null) {
+                entries.clear();
+            } else {
+                entries.remove(eventType);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        ListenerRegistration registered = registration;
+        if (registered != null) {
+            registered.close();
+        }
+    }
+
+    private void pollVersion() {
+        if (registration != null || version < 0) {
+            return;
+        }
+        long current = database.subscriptionsVersion();
+        if (current != version) {
+            invalidate(null);
+            version = current;
+        }
+    }
+
+    private record Entry(List<Subscriptions.Subscription> subscriptions, long loadedAt) {
+    }
+}
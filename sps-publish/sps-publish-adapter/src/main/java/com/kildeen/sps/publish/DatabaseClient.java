@@ -1,20 +1,23 @@
 package com.kildeen.sps.publish;
 
+import com.kildeen.sps.AllEventsResult;
 import com.kildeen.sps.BasicSpsEvents;
 import com.kildeen.sps.Client;
 import com.kildeen.sps.IdWithReceiptsResult;
-import com.kildeen.sps.Receipt;
-import com.kildeen.sps.IdWithReceipts;
 import com.kildeen.sps.SpsEvent;
 import com.kildeen.sps.SpsEvents;
 import com.kildeen.sps.json.JsonProvider;
 import com.kildeen.sps.persistence.Database;
+import com.kildeen.sps.persistence.TransportEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Database-based transport client for fallback delivery.
@@ -26,9 +29,18 @@ public class DatabaseClient implements Client {
     private static final Logger LOG = LoggerFactory.getLogger(DatabaseClient.class);
 
     private final Database database;
+    private final Executor executor;
 
     public DatabaseClient(Database database) {
+        this(database, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param executor runs the blocking inserts, the caller owns it
+     */
+    public DatabaseClient(Database database, Executor executor) {
         this.database = database;
+        this.executor = executor;
     }
 
     @Override
@@ -38,47 +50,25 @@ public class DatabaseClient implements Client {
                 String subscriberId = subscription.subscriber().subId();
                 String eventType = spsEvents.eventType();
 
-                // Convert to BasicSpsEvents for proper serialization/deserialization
-                List<BasicSpsEvents.BasicSpsEvent> basicEvents = spsEvents.spsEvents().stream()
-                        .map(e -> new BasicSpsEvents.BasicSpsEvent(e.type(), e.id(), e.data()))
-                        .toList();
-                BasicSpsEvents basicSpsEvents = new BasicSpsEvents(eventType, basicEvents);
-                String payload = JsonProvider.json().write(basicSpsEvents);
-
-                // Insert each event into the transport queue
+                // Queue each event with a payload holding just that event, so pollers parse each event once.
+                // Still a BasicSpsEvents for proper serialization/deserialization
+                List<TransportEvent> queued = new ArrayList<>(spsEvents.spsEvents().size());
                 for (var event : spsEvents.spsEvents()) {
-                    LOG.info("Inserting event {} into transport queue for subscriber {}", 
-                            event.id(), subscriberId);
-                    database.insertTransportEvent(event.id(), eventType, subscriberId, payload);
+                    String payload = JsonProvider.json().write(new BasicSpsEvents(eventType,
+                            List.of(new BasicSpsEvents.BasicSpsEvent(event.type(), event.id(), event.data()))));
+                    queued.add(new TransportEvent(event.id(), eventType, subscriberId, payload));
                 }
+                database.insertTransportEvents(queued);
+                LOG.debug("Inserted {} events of type {} into transport queue for subscriber {}",
+                        queued.size(), eventType, subscriberId);
 
                 // Return ACK - the event is now safely in the database
-                return new IdWithReceiptsResult() {
-                    @Override
-                    public Receipt allEvents() {
-                        return Receipt.ACK;
-                    }
-
-                    @Override
-                    public List<IdWithReceipts.IdWithReceipt> idWithReceipts() {
-                        throw new UnsupportedOperationException("Not implemented for database transport");
-                    }
-                };
+                return AllEventsResult.ACK;
             } catch (Exception e) {
                 LOG.error("Failed to insert event into transport queue", e);
-                return new IdWithReceiptsResult() {
-                    @Override
-                    public Receipt allEvents() {
-                        return Receipt.NACK;
-                    }
-
-                    @Override
-                    public List<IdWithReceipts.IdWithReceipt> idWithReceipts() {
-                        throw new UnsupportedOperationException("Not implemented for database transport");
-                    }
-                };
+                return AllEventsResult.NACK;
             }
-        });
+        }, executor);
     }
 
     @Override
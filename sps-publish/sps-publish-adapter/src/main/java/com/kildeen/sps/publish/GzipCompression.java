@@ -0,0 +1,11 @@
+package com.kildeen.sps.publish;
+
+/**
+ * Gzip for request bodies of at least minBytes, smaller bodies are sent as they are. Receivers must accept
+ * Content-Encoding gzip, one that answers 415 without gzip in its Accept-Encoding is sent uncompressed bodies.
+ *
+ * @param minBytes encoded body size from which it is compressed
+ * @param level    deflate level, 1 is fastest and 9 is smallest
+ */
+public record GzipCompression(int minBytes, int level) {
+}
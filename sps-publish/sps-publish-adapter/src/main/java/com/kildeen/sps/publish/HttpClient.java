@@ -1,54 +1,143 @@
 package com.kildeen.sps.publish;
 
+import com.kildeen.sps.AllEventsResult;
 import com.kildeen.sps.Client;
 import com.kildeen.sps.IdWithReceipts;
 import com.kildeen.sps.IdWithReceiptsResult;
+import com.kildeen.sps.IndexedReceipts;
 import com.kildeen.sps.Receipt;
 import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.json.BinaryCodec;
 import com.kildeen.sps.json.JsonProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.URI;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.util.EnumSet;
-import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
-
-import static com.kildeen.sps.Receipt.ACK;
-import static com.kildeen.sps.Receipt.NACK;
 
 public class HttpClient implements Client {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpClient.class);
     private static final int QUEUE_CAPACITY = 1000;
-    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
-            2, 10, 60, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<>(QUEUE_CAPACITY),
-            new ThreadPoolExecutor.CallerRunsPolicy());
+    private static final String JSON = "application/json";
+    private static final String GZIP = "gzip";
+    // Their own instances, told apart from a NACK by identity
+    private static final IdWithReceiptsResult UNSUPPORTED_MEDIA_TYPE = new AllEventsResult(Receipt.NACK);
+    private static final IdWithReceiptsResult UNSUPPORTED_ENCODING = new AllEventsResult(Receipt.NACK);
+    private static final HttpResponse.BodyHandler<IdWithReceiptsResult> RECEIPTS = HttpClient::receipts;
+
+    private final java.net.http.HttpClient httpClient;
+    private final BinaryCodec codec;
+    private final GzipCompression compression;
+    // Receivers that answered the binary encoding with 415, they are sent JSON from then on
+    private final Set<String> jsonOnly = ConcurrentHashMap.newKeySet();
+    // Receivers that answered gzip with 415, they are sent uncompressed bodies from then on
+    private final Set<String> uncompressed = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Uses a pool of its own, at most 10 threads and a bounded queue, running tasks on the caller when full.
+     */
+    public HttpClient() {
+        this(defaultExecutor());
+    }
 
-    private static final java.net.http.HttpClient httpClient = java.net.http.HttpClient.newBuilder()
-            .executor(executor)
-            .version(java.net.http.HttpClient.Version.HTTP_2)
-            .connectTimeout(Duration.ofSeconds(10))
-            .build();
+    /**
+     * @param executor runs the client's asynchronous work, the caller owns it. A virtual thread per task executor
+     *                 allows any number of concurrent deliveries without tying up platform threads
+     */
+    public HttpClient(Executor executor) {
+        this(executor, null);
+    }
 
+    /**
+     * @param executor runs the client's asynchronous work, the caller owns it
+     * @param codec    binary encoding offered to every receiver first, null to only send JSON. Receivers that answer
+     *                 415 Unsupported Media Type get the request again as JSON, and JSON from then on
+     */
+    public HttpClient(Executor executor, BinaryCodec codec) {
+        this(executor, codec, null);
+    }
 
-    @Override
-    public CompletableFuture<IdWithReceiptsResult> post(Subscriptions.Subscription subscription, SpsEvents spsEvents) {
-        HttpRequest request = HttpRequest.newBuilder()
-                .POST(HttpRequest.BodyPublishers.ofString(JsonProvider.json().write(spsEvents)))
-                .uri(URI.create(subscription.url()))
-                .header("Content-Type", "application/json")
+    /**
+     * @param executor    runs the client's asynchronous work, the caller owns it
+     * @param codec       binary encoding offered to every receiver first, null to only send JSON
+     * @param compression gzip for large bodies, null to send every body uncompressed
+     */
+    public HttpClient(Executor executor, BinaryCodec codec, GzipCompression compression) {
+        this.codec = codec;
+        this.compression = compression;
+        this.httpClient = java.net.http.HttpClient.newBuilder()
+                .executor(executor)
+                .version(java.net.http.HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(10))
                 .build();
+    }
 
-        CompletableFuture<HttpResponse<String>> response =
-                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    static ThreadPoolExecutor defaultExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                2, 10, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(QUEUE_CAPACITY),
+                r -> {
+                    Thread t = new Thread(r, "sps-http-client");
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        // One pool per client now, do not keep idle threads around for clients that are no longer used
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
-        final Function<HttpResponse<String>, IdWithReceiptsResult> mapResponse = createReceiptsMapper();
-        return response.thenApply(mapResponse);
+    @Override
+    public CompletableFuture<IdWithReceiptsResult> post(Subscriptions.Subscription subscription, SpsEvents spsEvents) {
+        String url = subscription.url();
+        boolean binary = codec != null && !jsonOnly.contains(url);
+        JsonBody.ChunkedOutput body = binary
+                ? JsonBody.binary(spsEvents, codec)
+                : JsonBody.json(spsEvents, JsonProvider.json());
+        boolean gzip = compression != null && !uncompressed.contains(url) && body.length() >= compression.minBytes();
+        if (gzip) {
+            body = JsonBody.gzip(body, compression.level());
+        }
+        return send(url, binary ? codec.contentType() : JSON, gzip, body).thenCompose(result -> {
+            // Drop one of the two at a time, the receiver tells which when it names the codings it accepts
+            if (gzip && (result == UNSUPPORTED_ENCODING || result == UNSUPPORTED_MEDIA_TYPE && !binary)) {
+                if (uncompressed.add(url)) {
+                    LOG.info("{} does not accept gzip, sending uncompressed bodies", url);
+                }
+                return post(subscription, spsEvents);
+            }
+            if (binary && (result == UNSUPPORTED_MEDIA_TYPE || result == UNSUPPORTED_ENCODING)) {
+                if (jsonOnly.add(url)) {
+                    LOG.info("{} does not accept {}, sending JSON", url, codec.contentType());
+                }
+                return post(subscription, spsEvents);
+            }
+            return CompletableFuture.completedFuture(result);
+        });
+    }
+
+    private CompletableFuture<IdWithReceiptsResult> send(String url, String contentType, boolean gzip,
+                                                         JsonBody.ChunkedOutput body) {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .POST(JsonBody.publisher(body))
+                .uri(URI.create(url))
+                .header("Content-Type", contentType)
+                .header("Accept", JSON);
+        if (gzip) {
+            request.header("Content-Encoding", GZIP);
+        }
+
+        return httpClient.sendAsync(request.build(), RECEIPTS).thenApply(HttpResponse::body);
     }
 
     @Override
@@ -56,40 +145,27 @@ public class HttpClient implements Client {
         return EnumSet.of(DeliveryType.HTTP);
     }
 
-    private Function<HttpResponse<String>, IdWithReceiptsResult> createReceiptsMapper() {
-        return resp -> {
-            if (resp.statusCode() == 204) {
-                return new IdWithReceiptsResult() {
-                    @Override
-                    public Receipt allEvents() {
-                        return ACK;
-                    }
-
-                    @Override
-                    public List<IdWithReceipts.IdWithReceipt> idWithReceipts() {
-                        throw new RuntimeException("Not implemented");
-                    }
-
-                };
-            }
-            if (resp.statusCode() == 200) {
-                return (IdWithReceiptsResult) () -> JsonProvider.json().readValue(resp.body(), IdWithReceipts.class)
-                        .idWithReceipts();
-
-            }
-            return new IdWithReceiptsResult() {
-                @Override
-                public Receipt allEvents() {
-                    return NACK;
-                }
-
-                @Override
-                public List<IdWithReceipts.IdWithReceipt> idWithReceipts() {
-                    throw new RuntimeException("Not implemented");
-                }
-
-            };
-        };
+    /**
+     * A 200 body is parsed once, straight from its bytes, into receipts indexed by event id. Other responses carry no
+     * receipts per event, their body is discarded.
+     */
+    private static HttpResponse.BodySubscriber<IdWithReceiptsResult> receipts(HttpResponse.ResponseInfo info) {
+        if (info.statusCode() == 204) {
+            return HttpResponse.BodySubscribers.replacing(AllEventsResult.ACK);
+        }
+        if (info.statusCode() == 200) {
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(),
+                    body -> new IndexedReceipts(JsonProvider.json().readValue(body, IdWithReceipts.class)
+                            .idWithReceipts()));
+        }
+        if (info.statusCode() == 415) {
+            // An unsupported content coding is answered with the codings the receiver accepts, RFC 7694
+            boolean gzipRejected = info.headers().firstValue("Accept-Encoding")
+                    .filter(accepted -> !accepted.contains(GZIP))
+                    .isPresent();
+            return HttpResponse.BodySubscribers.replacing(gzipRejected ? UNSUPPORTED_ENCODING : UNSUPPORTED_MEDIA_TYPE);
+        }
+        return HttpResponse.BodySubscribers.replacing(AllEventsResult.NACK);
     }
 
 }
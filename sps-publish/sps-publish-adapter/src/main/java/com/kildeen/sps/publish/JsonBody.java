@@ -0,0 +1,218 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.json.BinaryCodec;
+import com.kildeen.sps.json.Json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A request body of serialized {@link SpsEvents}, written straight into fixed size chunks instead of one String and
+ * then one byte array the size of the whole batch. The data of events forked without a subSchema is serialized once
+ * and its bytes are referenced by the body of every subscriber, only the small envelope with the forked ids is
+ * serialized per request and the shared data is spliced into it.
+ */
+final class JsonBody {
+
+    static final int CHUNK_SIZE = 16 * 1024;
+    // Shared data smaller than this is copied, a chunk of its own costs more than the copy
+    static final int MIN_SHARED_SIZE = 1024;
+    private static final String MARKER = "sps-shared-data-";
+
+    private JsonBody() {
+    }
+
+    static ChunkedOutput json(SpsEvents spsEvents, Json json) {
+        ChunkedOutput out = new ChunkedOutput();
+        if (spsEvents.spsEvents().stream().anyMatch(e -> e.data() instanceof SharedEventData)) {
+            writeSharing(spsEvents, json, out);
+        } else {
+            json.write(spsEvents, out);
+        }
+        return out;
+    }
+
+    /**
+     * The events in a binary encoding, written into the same chunks. Shared data is encoded per request.
+     */
+    static ChunkedOutput binary(SpsEvents spsEvents, BinaryCodec codec) {
+        ChunkedOutput out = new ChunkedOutput();
+        codec.write(spsEvents, out);
+        return out;
+    }
+
+    /**
+     * The written body compressed into new chunks, the shared data chunks are read and not modified.
+     */
+    static ChunkedOutput gzip(ChunkedOutput body, int level) {
+        ChunkedOutput out = new ChunkedOutput();
+        try (GZIPOutputStream gzip = new LeveledGzip(out, level)) {
+            for (byte[] chunk : body.chunks()) {
+                gzip.write(chunk);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out;
+    }
+
+    static HttpRequest.BodyPublisher publisher(ChunkedOutput out) {
+        List<byte[]> chunks = out.chunks();
+        return HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofByteArrays(chunks),
+                out.length());
+    }
+
+    /**
+     * Serializes the envelope with each shared data replaced by a marker object, then copies it to out with the
+     * shared bytes in place of the markers.
+     */
+    private static void writeSharing(SpsEvents spsEvents, Json json, ChunkedOutput out) {
+        // Unique per body, so event data can never contain it
+        String marker = MARKER + UUID.randomUUID();
+        List<byte[]> shared = new ArrayList<>();
+        List<SpsEvent> events = new ArrayList<>(spsEvents.spsEvents().size());
+        for (SpsEvent event : spsEvents.spsEvents()) {
+            Map<String, Object> data = event.data();
+            if (data instanceof SharedEventData sharedData) {
+                shared.add(sharedData.json(json));
+                data = Map.of(marker, shared.size());
+            }
+            events.add(new BasicSpsEvents.BasicSpsEvent(event.type(), event.id(), data));
+        }
+        byte[] envelope = json.writeValueAsBytes(new SpsEvents(spsEvents.eventType(), events));
+
+        byte[] quotedMarker = ("\"" + marker + "\"").getBytes(StandardCharsets.UTF_8);
+        int copied = 0;
+        for (byte[] data : shared) {
+            int found = indexOf(envelope, quotedMarker, copied);
+            int objectStart = lastIndexOf(envelope, (byte) '{', found);
+            int objectEnd = indexOf(envelope, (byte) '}', found);
+            out.write(envelope, copied, objectStart - copied);
+            out.append(data);
+            copied = objectEnd + 1;
+        }
+        out.write(envelope, copied, envelope.length - copied);
+    }
+
+    private static int indexOf(byte[] bytes, byte[] key, int from) {
+        for (int i = from; i <= bytes.length - key.length; i++) {
+            if (Arrays.equals(bytes, i, i + key.length, key, 0, key.length)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Shared data marker missing from the serialized events");
+    }
+
+    private static int indexOf(byte[] bytes, byte b, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Shared data marker is not closed");
+    }
+
+    private static int lastIndexOf(byte[] bytes, byte b, int from) {
+        for (int i = from; i >= 0; i--) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Shared data marker is not opened");
+    }
+
+    private static final class LeveledGzip extends GZIPOutputStream {
+        LeveledGzip(OutputStream out, int level) throws IOException {
+            super(out, CHUNK_SIZE);
+            def.setLevel(level);
+        }
+    }
+
+    /**
+     * Collects written bytes in chunks, large arrays passed to {@link #append} become chunks of their own without
+     * a copy.
+     */
+    static final class ChunkedOutput extends OutputStream {
+        private final List<byte[]> chunks = new ArrayList<>();
+        private byte[] current = new byte[CHUNK_SIZE];
+        private int position;
+        private long length;
+
+        @Override
+        public void write(int b) {
+            if (position == current.length) {
+                seal();
+            }
+            current[position++] = (byte) b;
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b) {
+            write(b, 0, b.length);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (position == current.length) {
+                    seal();
+                }
+                int n = Math.min(len, current.length - position);
+                System.arraycopy(b, off, current, position, n);
+                position += n;
+                off += n;
+                len -= n;
+                length += n;
+            }
+        }
+
+        void append(byte[] shared) {
+            if (shared.length < MIN_SHARED_SIZE) {
+                write(shared, 0, shared.length);
+                return;
+            }
+            seal();
+            chunks.add(shared);
+            length += shared.length;
+        }
+
+        List<byte[]> chunks() {
+            if (position > 0) {
+                chunks.add(Arrays.copyOf(current, position));
+                position = 0;
+            }
+            return chunks;
+        }
+
+        long length() {
+            return length;
+        }
+
+        private void seal() {
+            if (position == 0) {
+                return;
+            }
+            if (position == current.length) {
+                chunks.add(current);
+                current = new byte[CHUNK_SIZE];
+            } else {
+                // Keep filling the same buffer after the copy
+                chunks.add(Arrays.copyOf(current, position));
+            }
+            position = 0;
+        }
+    }
+}
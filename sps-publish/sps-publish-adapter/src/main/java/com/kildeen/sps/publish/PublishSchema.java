@@ -116,6 +116,6 @@ public class PublishSchema {
                 return Map.of("json", JsonProvider.json().write(schema));
             }
         };
-        publisher.publish(subscriptions, List.of(event));
+        publisher.send(subscriptions, List.of(event));
     }
 }
\ No newline at end of file
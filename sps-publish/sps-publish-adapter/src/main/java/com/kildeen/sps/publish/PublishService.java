@@ -2,30 +2,45 @@ package com.kildeen.sps.publish;
 
 import com.kildeen.sps.Client;
 import com.kildeen.sps.ConfigurationException;
+import com.kildeen.sps.IdWithReceipts;
 import com.kildeen.sps.Schemas;
 import com.kildeen.sps.SpsEvent;
 import com.kildeen.sps.SpsEventType;
 import com.kildeen.sps.SpsSubscriberType;
 import com.kildeen.sps.dlq.DeadLetterQueue;
+import com.kildeen.sps.json.BinaryCodec;
 import com.kildeen.sps.persistence.Database;
 import com.kildeen.sps.publish.Subscriptions.Subscription;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
-public class PublishService implements Publish {
+public class PublishService implements Publish, AutoCloseable {
+
+    static final Duration DEFAULT_SUBSCRIPTION_CACHE_TTL = Duration.ofSeconds(30);
+    static final int DEFAULT_SUBSCRIPTION_CACHE_SIZE = 1024;
 
     private final Publisher publisher;
     private final PublishSchema publishSchema;
     private final FetchSubscription fetchSubscription;
+    private final CachingFetchSubscriptions subscriptionCache;
+    private final List<ExecutorService> ownedExecutors;
 
     private PublishService(Builder builder) {
         publisher = builder.publisher;
         publishSchema = builder.publishSchema;
         fetchSubscription = builder.fetchSubscription;
+        subscriptionCache = builder.subscriptionCache;
+        ownedExecutors = List.copyOf(builder.ownedExecutors);
     }
 
     public static Builder newBuilder() {
@@ -42,10 +57,57 @@ public class PublishService implements Publish {
             return PublishResult.SCHEMA_GEN_PUBLISH;
         }
 
-        publisher.publish(subscriptions, events);
+        publisher.send(subscriptions, events);
         return PublishResult.PUBLISH;
     }
 
+    @Override
+    public CompletableFuture<IdWithReceipts> publishAsync(Collection<SpsEvent> events) {
+        Set<String> types = SpsEvent.resolveTypes(events);
+        Subscriptions subscriptions = fetchSubscription.fetch(types);
+
+        if (subscriptions.isEmpty()) {
+            generateSchema(types, events);
+            return CompletableFuture.completedFuture(new IdWithReceipts(List.of()));
+        }
+        return publisher.publish(subscriptions, events);
+    }
+
+    @Override
+    public StreamPublisher subscriber(int batchSize, Duration maxDelay) {
+        if (batchSize < 1 || maxDelay == null || maxDelay.isNegative()) {
+            throw new IllegalArgumentException("A stream needs a batchSize of at least 1 and a non-negative maxDelay");
+        }
+        return new StreamPublisher(this, publisher.scheduler(), batchSize, maxDelay);
+    }
+
+    /**
+     * Closes the publisher, events still waiting for a retry complete as UNKNOWN, and shuts down the executors
+     * this service created. An executor passed to {@link Builder#withExecutor(Executor)} is left running.
+     */
+    @Override
+    public void close() {
+        if (subscriptionCache != null) {
+            subscriptionCache.close();
+        }
+        publisher.close();
+        ownedExecutors.forEach(ExecutorService::shutdown);
+        try {
+            for (ExecutorService executor : ownedExecutors) {
+                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            ownedExecutors.forEach(ExecutorService::shutdownNow);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    List<ExecutorService> ownedExecutors() {
+        return ownedExecutors;
+    }
+
     private void generateSchema(Set<String> types, Collection<SpsEvent> events) {
         String url = fetchSubscription.fetchSchemaGenUrl();
         Subscription.Subscriber schemaGen =
@@ -68,9 +130,21 @@ public class PublishService implements Publish {
         private Publisher publisher;
         private PublishSchema publishSchema;
         private FetchSubscription fetchSubscription;
+        private CachingFetchSubscriptions subscriptionCache;
+        private final List<ExecutorService> ownedExecutors = new ArrayList<>();
         private RetryPolicies retryPolicies;
         private DeadLetterQueue deadLetterQueue;
-
+        // Null until configured, the default depends on whether the database signals subscription changes
+        private Duration subscriptionCacheTtl;
+        private boolean subscriptionCacheConfigured;
+        private int subscriptionCacheSize = DEFAULT_SUBSCRIPTION_CACHE_SIZE;
+        private int maxBatchEvents = 1;
+        private Duration maxBatchDelay = Duration.ZERO;
+        private int maxInFlight = Publisher.DEFAULT_MAX_IN_FLIGHT;
+        private boolean virtualThreads;
+        private Executor executor;
+        private BinaryCodec codec;
+        private GzipCompression compression;
 
         private Builder() {
         }
@@ -110,12 +184,108 @@ public class PublishService implements Publish {
             return this;
         }
 
+        /**
+         * Subscriptions are cached per event type and invalidated when the database signals a change. Without
+         * this the cache is only used, with a 30 second TTL, when the database pushes changes or versions them.
+         * @param ttl how long cached subscriptions are used at most, Duration.ZERO disables the cache
+         * @param maxEventTypes how many event types to cache before evicting the least recently used
+         * @return Builder instance
+         */
+        public Builder withSubscriptionCache(Duration ttl, int maxEventTypes) {
+            this.subscriptionCacheTtl = ttl;
+            this.subscriptionCacheSize = maxEventTypes;
+            this.subscriptionCacheConfigured = true;
+            return this;
+        }
+
+        /**
+         * Coalesces events published for the same subscriber and event type into one request, for producers that
+         * publish a few events at a time at a high rate. Off by default.
+         * @param maxEvents events per request at most, the batch is sent as soon as it is full
+         * @param maxDelay how long the first event of a batch waits for more
+         * @return Builder instance
+         */
+        public Builder withCoalescing(int maxEvents, Duration maxDelay) {
+            this.maxBatchEvents = maxEvents;
+            this.maxBatchDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * Bounds how many forked events, one per event and subscriber, published through
+         * {@link PublishService#publishAsync(Collection)} or a {@link PublishService#subscriber(int, Duration)} can be
+         * sent or awaiting a retry at once. Those block while the window is full,
+         * {@link PublishService#publish(Collection)} never waits for it.
+         * @param maxInFlight forked events in flight at most
+         * @return Builder instance
+         */
+        public Builder withMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Run deliveries and retries on a virtual thread per task instead of small platform thread pools, so
+         * thousands of deliveries can be in flight without the HTTP client running work on the publishing thread.
+         * The executor is shut down by {@link PublishService#close()}.
+         * @return Builder instance
+         */
+        public Builder withVirtualThreads() {
+            this.virtualThreads = true;
+            return this;
+        }
+
+        /**
+         * Executor for the default HTTP and database clients and for retries, the caller owns it and shuts it
+         * down. Clients added with {@link #withClient(Client)} keep their own.
+         * @param executor the executor to use
+         * @return Builder instance
+         */
+        public Builder withExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Offers receivers a binary encoding instead of JSON, receivers that do not accept it are sent JSON. Only
+         * applies to the default HTTP client.
+         * @param codec the encoding, for example {@code SmileCodec}
+         * @return Builder instance
+         */
+        public Builder withBinaryCodec(BinaryCodec codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * Compresses request bodies of the default HTTP client with gzip once they reach minBytes. Receivers must
+         * accept Content-Encoding gzip, for Quarkus set {@code quarkus.http.enable-decompression=true}.
+         * @param minBytes encoded body size from which it is compressed
+         * @param level deflate level from 1, fastest, to 9, smallest
+         * @return Builder instance
+         */
+        public Builder withGzip(int minBytes, int level) {
+            this.compression = new GzipCompression(minBytes, level);
+            return this;
+        }
+
         public PublishService build() {
             validateConfiguration();
 
+            if (virtualThreads) {
+                ExecutorService virtual = Executors.newVirtualThreadPerTaskExecutor();
+                ownedExecutors.add(virtual);
+                executor = virtual;
+            }
             if (clients.isEmpty()) {
-                clients.add(new HttpClient());
-                clients.add(new DatabaseClient(database));
+                Executor httpExecutor = executor;
+                if (httpExecutor == null) {
+                    ExecutorService pool = HttpClient.defaultExecutor();
+                    ownedExecutors.add(pool);
+                    httpExecutor = pool;
+                }
+                clients.add(new HttpClient(httpExecutor, codec, compression));
+                clients.add(executor != null ? new DatabaseClient(database, executor) : new DatabaseClient(database));
             }
             if (schemas == null) {
                 schemas = new Schemas(List.of());
@@ -124,8 +294,19 @@ public class PublishService implements Publish {
                 retryPolicies = new RetryPolicies(List.of(), RetryPolicies.DEFAULT_RETRY_POLICIES);
             }
             this.publisher = new Publisher(new Sender(clients), new RetryQueue(), retryPolicies,
-                    database, deadLetterQueue);
-            fetchSubscription = new FetchSubscription(new FetchSubscriptionsImpl(database));
+                    database, deadLetterQueue, maxBatchEvents, maxBatchDelay, maxInFlight, executor);
+            FetchSubscriptions fetchSubscriptions = new FetchSubscriptionsImpl(database);
+            if (!subscriptionCacheConfigured) {
+                // A cache the database cannot invalidate would hide subscription changes until entries expire
+                boolean signalsChanges = database.pushesSubscriptionChanges() || database.subscriptionsVersion() >= 0;
+                subscriptionCacheTtl = signalsChanges ? DEFAULT_SUBSCRIPTION_CACHE_TTL : Duration.ZERO;
+            }
+            if (!subscriptionCacheTtl.isZero()) {
+                subscriptionCache = CachingFetchSubscriptions.create(fetchSubscriptions, database,
+                        subscriptionCacheTtl, subscriptionCacheSize);
+                fetchSubscriptions = subscriptionCache;
+            }
+            fetchSubscription = new FetchSubscription(fetchSubscriptions);
             FetchSchema fetchSchema = new FetchSchema(new FetchSchemasImpl(database));
             publishSchema = new PublishSchema(publisher, fetchSchema, schemas);
             return new PublishService(this);
@@ -139,6 +320,43 @@ public class PublishService implements Publish {
                         "Call .withDatabase(database) on the builder"
                 );
             }
+            if (subscriptionCacheConfigured && (subscriptionCacheTtl == null || subscriptionCacheTtl.isNegative()
+                    || subscriptionCacheSize < 1)) {
+                throw new ConfigurationException(
+                        "subscriptionCache",
+                        "Subscription cache needs a non-negative TTL and room for one event type",
+                        "Call .withSubscriptionCache(Duration.ZERO, 1) to disable the cache"
+                );
+            }
+            if (maxBatchEvents < 1 || maxBatchDelay == null || maxBatchDelay.isNegative()) {
+                throw new ConfigurationException(
+                        "coalescing",
+                        "Coalescing needs room for one event and a non-negative delay",
+                        "Call .withCoalescing(1, Duration.ZERO) to send every publish on its own"
+                );
+            }
+            if (maxInFlight < 1) {
+                throw new ConfigurationException(
+                        "maxInFlight",
+                        "At least one event must be allowed in flight",
+                        "Call .withMaxInFlight(n) with n >= 1"
+                );
+            }
+            if (compression != null && (compression.minBytes() < 0 || compression.level() < 1
+                    || compression.level() > 9)) {
+                throw new ConfigurationException(
+                        "gzip",
+                        "Gzip needs a non-negative size threshold and a level from 1 to 9",
+                        "Call .withGzip(8192, 1) to compress bodies from 8 KB at the fastest level"
+                );
+            }
+            if (virtualThreads && executor != null) {
+                throw new ConfigurationException(
+                        "executor",
+                        "Virtual threads and a supplied executor are mutually exclusive",
+                        "Call either .withVirtualThreads() or .withExecutor(executor) on the builder"
+                );
+            }
         }
     }
 }
@@ -0,0 +1,213 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.sps.SpsEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes a stream of events as it arrives. Events are requested batchSize at a time, grouped per event type
+ * and published once batchSize have been buffered or maxDelay after the first one, then as many are requested
+ * again as were published. Publishing blocks while the publisher's in-flight window is full, so a fast stream
+ * is held back by demand rather than buffered.
+ *
+ * <p>Batches are taken from the buffer under the lock and published outside it. Delayed batches are timed on the
+ * publisher's scheduler and published from a virtual thread, so waiting for room never holds up the scheduler.
+ */
+public class StreamPublisher implements Flow.Subscriber<SpsEvent> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamPublisher.class);
+
+    private final PublishService publishService;
+    private final ScheduledExecutorService scheduler;
+    private final int batchSize;
+    private final Duration maxDelay;
+    private final Map<String, List<SpsEvent>> buffered = new LinkedHashMap<>();
+    private final List<CompletableFuture<?>> published = new ArrayList<>();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+    private ScheduledFuture<?> scheduledFlush;
+    private int bufferedCount;
+    /** Batches taken from the buffer that are still being handed to the publisher */
+    private int publishing;
+    private boolean done;
+    private boolean completing;
+    private Throwable failure;
+
+    StreamPublisher(PublishService publishService, ScheduledExecutorService scheduler, int batchSize,
+                    Duration maxDelay) {
+        this.publishService = publishService;
+        this.scheduler = scheduler;
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+    }
+
+    @Override
+    public synchronized void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(batchSize);
+    }
+
+    @Override
+    public void onNext(SpsEvent event) {
+        Batch batch;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            buffered.computeIfAbsent(event.type(), type -> new ArrayList<>()).add(event);
+            bufferedCount++;
+            if (bufferedCount < batchSize) {
+                if (scheduledFlush == null) {
+                    scheduledFlush = scheduler.schedule(
+                            () -> Thread.ofVirtual().name("stream-publisher-flush").start(this::flushDue),
+                            maxDelay.toMillis(), TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+            batch = take();
+        }
+        publish(batch);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        LOG.warn("Event stream failed, publishing what was received", throwable);
+        finish(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        finish(null);
+    }
+
+    /**
+     * Completes once the stream has ended and every published event has its final receipt, exceptionally if the
+     * stream or publishing failed.
+     */
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    private void flushDue() {
+        Batch batch;
+        synchronized (this) {
+            scheduledFlush = null;
+            if (done || bufferedCount == 0) {
+                return;
+            }
+            batch = take();
+        }
+        publish(batch);
+    }
+
+    /**
+     * Takes everything buffered, guarded by this.
+     */
+    private Batch take() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        Batch batch = new Batch(List.copyOf(buffered.values()), bufferedCount);
+        buffered.clear();
+        bufferedCount = 0;
+        publishing++;
+        return batch;
+    }
+
+    private void publish(Batch batch) {
+        List<CompletableFuture<?>> futures = new ArrayList<>(batch.eventsByType().size());
+        RuntimeException publishFailure = null;
+        try {
+            for (List<SpsEvent> events : batch.eventsByType()) {
+                futures.add(publishService.publishAsync(events));
+            }
+        } catch (RuntimeException e) {
+            publishFailure = e;
+        }
+        boolean request;
+        synchronized (this) {
+            publishing--;
+            published.removeIf(future -> future.isDone() && !future.isCompletedExceptionally());
+            published.addAll(futures);
+            if (publishFailure != null && failure == null) {
+                failure = publishFailure;
+            }
+            request = publishFailure == null && !done;
+        }
+        if (publishFailure != null) {
+            LOG.error("Could not publish streamed events, cancelling the stream", publishFailure);
+            subscription.cancel();
+            finish(publishFailure);
+        } else if (request) {
+            subscription.request(batch.count());
+        }
+        completeIfFinished();
+    }
+
+    private void finish(Throwable streamFailure) {
+        Batch batch = null;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (streamFailure != null) {
+                failure = streamFailure;
+            }
+            if (bufferedCount > 0) {
+                batch = take();
+            } else if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+        }
+        if (batch != null) {
+            publish(batch);
+        }
+        completeIfFinished();
+    }
+
+    /**
+     * Waits for the receipts of everything published once the stream is done and no batch is still being handed
+     * over.
+     */
+    private void completeIfFinished() {
+        CompletableFuture<?>[] pending;
+        Throwable cause;
+        synchronized (this) {
+            if (!done || publishing > 0 || completing) {
+                return;
+            }
+            completing = true;
+            pending = published.toArray(CompletableFuture<?>[]::new);
+            cause = failure;
+        }
+        CompletableFuture.allOf(pending).whenComplete((ignored, e) -> {
+            Throwable completedWith = cause != null ? cause : e;
+            if (completedWith != null) {
+                completion.completeExceptionally(completedWith);
+            } else {
+                completion.complete(null);
+            }
+        });
+    }
+
+    private record Batch(List<List<SpsEvent>> eventsByType, int count) {
+    }
+}
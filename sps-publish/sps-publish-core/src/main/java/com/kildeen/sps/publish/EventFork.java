@@ -3,47 +3,70 @@ package com.kildeen.sps.publish;
 import com.kildeen.sps.SpsEvent;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+/**
+ * Forks events into one copy per subscription.
+ *
+ * <p>Subscriptions without a subSchema all receive the same unmodifiable view of the original event data,
+ * so wide fan-out neither copies nor serializes the data once per subscriber, see {@link SharedEventData}. A new
+ * map is only materialised when a rename schema applies, using the subscription's precompiled
+ * {@link RenamePlan}. Event data must therefore not be mutated once it has been handed to the publisher.
+ */
 public class EventFork {
 
     private final List<Subscriptions.Subscription> subscriptions;
-    private final Collection<SpsEvent> events;
+    private final List<SpsEvent> events;
 
     public EventFork(Collection<SpsEvent> events, List<Subscriptions.Subscription> subscriptions) {
-        this.events = events;
+        this.events = List.copyOf(events);
         this.subscriptions = subscriptions;
     }
 
     public ForkedEvents fork() {
+        List<Map<String, Object>> sharedData = sharedData();
         return new ForkedEvents(subscriptions.stream()
-                .map(this::forkSubscription)
+                .map(subscription -> forkSubscription(subscription, sharedData))
                 .collect(Collectors.toList()));
     }
 
-    private ForkedEvents.Fork forkSubscription(Subscriptions.Subscription subscription) {
-        List<SpsEvent> forkedSpsEvents = events.stream()
-                .map(event -> createForkedEvent(event, subscription))
-                .toList();
-
-        return new ForkedEvents.Fork(subscription, forkedSpsEvents, subscription.deliveryType(), Instant.now());
+    /**
+     * One read-only view per event, shared by every schema-less fork of that event.
+     */
+    private List<Map<String, Object>> sharedData() {
+        if (subscriptions.stream().allMatch(EventFork::hasSchema)) {
+            return List.of();
+        }
+        List<Map<String, Object>> sharedData = new ArrayList<>(events.size());
+        for (SpsEvent event : events) {
+            sharedData.add(new SharedEventData(event.data()));
+        }
+        return sharedData;
     }
 
-    private SpsEvent createForkedEvent(SpsEvent originalEvent, Subscriptions.Subscription subscription) {
-        Map<String, Object> forkedData = subscription.subSchema().isEmpty() ?
-                new HashMap<>(originalEvent.data()) : new HashMap<>();
-
-        if (!subscription.subSchema().isEmpty()) {
-            subscription.subSchema().keySet().forEach(key ->
-                    forkedData.put(subscription.subSchema().get(key), originalEvent.data().get(key)));
+    private ForkedEvents.Fork forkSubscription(Subscriptions.Subscription subscription,
+                                               List<Map<String, Object>> sharedData) {
+        RenamePlan renamePlan = hasSchema(subscription) ? RenamePlan.of(subscription) : null;
+        String idSuffix = "_" + subscription.subscriber().subId();
+        List<SpsEvent> forkedSpsEvents = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            SpsEvent event = events.get(i);
+            Map<String, Object> forkedData = renamePlan != null ? renamePlan.apply(event.data()) : sharedData.get(i);
+            forkedSpsEvents.add(new ForkedEvents.Fork.ForkSpsEvent(subscription.eventType(),
+                    event.id() + idSuffix, forkedData));
         }
 
-        return new ForkedEvents.Fork.ForkSpsEvent(subscription.eventType(),
-                originalEvent.id() + "_" + subscription.subscriber().subId(), forkedData);
+        return new ForkedEvents.Fork(subscription, Collections.unmodifiableList(forkedSpsEvents),
+                subscription.deliveryType(), Instant.now());
+    }
+
+    private static boolean hasSchema(Subscriptions.Subscription subscription) {
+        return subscription.subSchema() != null && !subscription.subSchema().isEmpty();
     }
 
     public record ForkedEvents(List<PublishableEvent> forks) {
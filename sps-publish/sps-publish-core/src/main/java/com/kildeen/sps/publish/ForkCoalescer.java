@@ -0,0 +1,108 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.sps.SpsEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces forks per subscriber and event type, so producers publishing one event at a time still send one
+ * request per batch. A batch is sent once it holds maxEvents events or maxDelay after its first event, whichever
+ * comes first. Receipts are per event, so a partially failed batch only retries the events that failed.
+ */
+class ForkCoalescer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ForkCoalescer.class);
+
+    private final int maxEvents;
+    private final Duration maxDelay;
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<PublishableEvent> send;
+    private final Map<Key, Batch> batches = new HashMap<>();
+
+    ForkCoalescer(int maxEvents, Duration maxDelay, ScheduledExecutorService scheduler,
+                  Consumer<PublishableEvent> send) {
+        this.maxEvents = maxEvents;
+        this.maxDelay = maxDelay;
+        this.scheduler = scheduler;
+        this.send = send;
+    }
+
+    void add(PublishableEvent fork) {
+        Subscriptions.Subscription subscription = fork.subscription();
+        Key key = new Key(subscription.subscriber().subId(), subscription.eventType());
+        Batch full = null;
+        synchronized (this) {
+            Batch batch = batches.get(key);
+            if (batch == null) {
+                batch = new Batch(fork.deliveryTypes(), fork.createdAt());
+                batches.put(key, batch);
+                Batch scheduled = batch;
+                scheduler.schedule(() -> flush(key, scheduled), maxDelay.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            batch.subscription = subscription;
+            batch.events.addAll(fork.forkedEvents());
+            if (batch.events.size() >= maxEvents) {
+                batches.remove(key);
+                full = batch;
+            }
+        }
+        if (full != null) {
+            send.accept(full.toFork());
+        }
+    }
+
+    /**
+     * Sends every pending batch right away.
+     */
+    void flushAll() {
+        List<Batch> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(batches.values());
+            batches.clear();
+        }
+        pending.forEach(batch -> send.accept(batch.toFork()));
+    }
+
+    private void flush(Key key, Batch batch) {
+        synchronized (this) {
+            // Already sent when it filled up, a newer batch for the key has its own timer
+            if (!batches.remove(key, batch)) {
+                return;
+            }
+        }
+        try {
+            send.accept(batch.toFork());
+        } catch (RuntimeException e) {
+            LOG.error("Could not send coalesced batch of {} {} events", batch.events.size(), key.eventType(), e);
+        }
+    }
+
+    private record Key(String subId, String eventType) {
+    }
+
+    private static final class Batch {
+        private final List<SpsEvent> events = new ArrayList<>();
+        private final List<DeliveryType> deliveryTypes;
+        private final Instant createdAt;
+        private Subscriptions.Subscription subscription;
+
+        private Batch(List<DeliveryType> deliveryTypes, Instant createdAt) {
+            this.deliveryTypes = deliveryTypes;
+            this.createdAt = createdAt;
+        }
+
+        private PublishableEvent toFork() {
+            return new EventFork.ForkedEvents.Fork(subscription, List.copyOf(events), deliveryTypes, createdAt);
+        }
+    }
+}
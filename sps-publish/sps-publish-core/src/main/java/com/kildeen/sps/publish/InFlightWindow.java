@@ -0,0 +1,100 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.sps.IdWithReceipts;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds how many forked events are in flight, that is sent or waiting for a retry, and completes each one with
+ * its final receipt. Producers block in {@link #enter} while the window is full, so a saturated pipeline slows
+ * them down instead of queueing without limit.
+ *
+ * <p>Events are tracked by their forked id, which is unique per event and subscriber. An id published again while
+ * it is still in flight shares the outcome of the first one, the same way retries are deduplicated by id.
+ */
+class InFlightWindow {
+
+    private final int maxInFlight;
+    private final Semaphore permits;
+    private final Map<String, Tracked> inFlight = new ConcurrentHashMap<>();
+
+    InFlightWindow(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Waits for room for the fork's events and starts tracking them.
+     *
+     * @return one future per forked event, completed with its final receipt
+     */
+    List<CompletableFuture<IdWithReceipts.IdWithReceipt>> enter(PublishableEvent fork) throws InterruptedException {
+        List<SpsEvent> events = fork.forkedEvents();
+        // A fork larger than the window takes the whole window, its other events ride along without a permit
+        int needed = Math.min(events.size(), maxInFlight);
+        permits.acquire(needed);
+        List<CompletableFuture<IdWithReceipts.IdWithReceipt>> outcomes = new ArrayList<>(events.size());
+        int unused = needed;
+        for (SpsEvent event : events) {
+            Tracked tracked = new Tracked(new CompletableFuture<>(), unused > 0);
+            Tracked existing = inFlight.putIfAbsent(event.id(), tracked);
+            if (existing != null) {
+                outcomes.add(existing.outcome());
+            } else {
+                if (tracked.holdsPermit()) {
+                    unused--;
+                }
+                outcomes.add(tracked.outcome());
+            }
+        }
+        if (unused > 0) {
+            permits.release(unused);
+        }
+        return outcomes;
+    }
+
+    void complete(SpsEvent event, Receipt receipt) {
+        Tracked tracked = inFlight.remove(event.id());
+        if (tracked == null) {
+            return;
+        }
+        if (tracked.holdsPermit()) {
+            permits.release();
+        }
+        tracked.outcome().complete(new IdWithReceipts.IdWithReceipt(event.id(), event.type(), receipt, Instant.now()));
+    }
+
+    void complete(List<SpsEvent> events, Receipt receipt) {
+        events.forEach(event -> complete(event, receipt));
+    }
+
+    /**
+     * Completes everything still in flight, used on close when pending retries will not run.
+     */
+    void completeAll(Receipt receipt) {
+        inFlight.keySet().forEach(id -> {
+            Tracked tracked = inFlight.remove(id);
+            if (tracked != null) {
+                if (tracked.holdsPermit()) {
+                    permits.release();
+                }
+                tracked.outcome().complete(new IdWithReceipts.IdWithReceipt(id, null, receipt, Instant.now()));
+            }
+        });
+    }
+
+    int inFlight() {
+        return inFlight.size();
+    }
+
+    private record Tracked(CompletableFuture<IdWithReceipts.IdWithReceipt> outcome, boolean holdsPermit) {
+    }
+}
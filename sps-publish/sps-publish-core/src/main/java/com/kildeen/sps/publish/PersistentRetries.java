@@ -0,0 +1,103 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.json.JsonProvider;
+import com.kildeen.sps.persistence.Database;
+import com.kildeen.sps.persistence.PendingRetry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps {@link RetryPolicies.RetryPolicy.RetentionType#PERSISTENT} retries in the database, so they survive a
+ * publisher restart and are sent by whichever publisher claims them once due.
+ */
+class PersistentRetries {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PersistentRetries.class);
+    // Long enough to send a claimed batch, a crashed publisher's claims are picked up again after it
+    static final Duration CLAIM_LEASE = Duration.ofSeconds(60);
+
+    private final Database database;
+
+    PersistentRetries(Database database) {
+        this.database = database;
+    }
+
+    /**
+     * @return false when the same events already wait for a retry, which then sends them
+     */
+    boolean save(PublishableEvent event, RetryPolicies.RetryPolicy retryPolicy) {
+        Subscriptions.Subscription subscription = event.subscription();
+        List<BasicSpsEvents.BasicSpsEvent> events = event.forkedEvents().stream()
+                .map(e -> new BasicSpsEvents.BasicSpsEvent(e.type(), e.id(), e.data()))
+                .toList();
+        String payload = JsonProvider.json().write(new BasicSpsEvents(subscription.eventType(), events));
+        boolean saved = database.saveRetry(new PendingRetry(event.retryKey(), subscription.eventType(),
+                subscription.subscriber().subId(), payload, event.retries(), retryPolicy.deliveryType().name(),
+                event.createdAt(), Instant.now().plusMillis(retryPolicy.waitInMs()), null));
+        if (saved) {
+            LOG.debug("Event {} saved to the persistent retry queue", event.id());
+        } else {
+            LOG.debug("Event {} already in the persistent retry queue, skipping", event.id());
+        }
+        return saved;
+    }
+
+    /**
+     * Claims up to max due retries. Retries whose subscription no longer exists are dropped.
+     */
+    List<Claimed> claimDue(int max) {
+        List<PendingRetry> rows = database.claimDueRetries(max, CLAIM_LEASE);
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        Set<String> eventTypes = rows.stream().map(PendingRetry::eventType).collect(Collectors.toSet());
+        Map<String, List<Subscriptions.Subscription>> byEventType = database.subscriptions(eventTypes)
+                .subscriptions().stream()
+                .collect(Collectors.groupingBy(Subscriptions.Subscription::eventType));
+
+        List<Claimed> claimed = new ArrayList<>(rows.size());
+        List<PendingRetry> orphaned = new ArrayList<>();
+        for (PendingRetry row : rows) {
+            Map<String, Subscriptions.Subscription> bySubscriber = byEventType.getOrDefault(row.eventType(), List.of())
+                    .stream()
+                    .collect(Collectors.toMap(s -> s.subscriber().subId(), Function.identity(), (a, b) -> a));
+            Subscriptions.Subscription subscription = bySubscriber.get(row.subscriberId());
+            if (subscription == null) {
+                LOG.warn("Dropping retry of {}, {} no longer subscribes to {}",
+                        row.eventId(), row.subscriberId(), row.eventType());
+                orphaned.add(row);
+                continue;
+            }
+            List<SpsEvent> events = List.copyOf(
+                    JsonProvider.json().readValue(row.payload(), BasicSpsEvents.class).spsEvents());
+            claimed.add(new Claimed(row, subscription, events));
+        }
+        if (!orphaned.isEmpty()) {
+            database.completeRetries(orphaned);
+        }
+        return claimed;
+    }
+
+    void complete(PendingRetry row) {
+        try {
+            database.completeRetries(List.of(row));
+        } catch (RuntimeException e) {
+            // The claim expires and the retry is sent again, receivers dedupe by id
+            LOG.error("Could not complete retry of {}", row.eventId(), e);
+        }
+    }
+
+    record Claimed(PendingRetry row, Subscriptions.Subscription subscription, List<SpsEvent> events) {
+    }
+}
@@ -2,8 +2,10 @@ package com.kildeen.sps.publish;
 
 import com.kildeen.sps.SpsEvent;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.List;
+import java.util.UUID;
 
 public sealed interface PublishableEvent permits EventFork.ForkedEvents.Fork, Publisher.RetryEvent {
 
@@ -23,4 +25,20 @@ public sealed interface PublishableEvent permits EventFork.ForkedEvents.Fork, Pu
         return forkedEvents().getFirst().id();
     }
 
+    /**
+     * Identifies the forked events in the retry queues. A single event is keyed by its id, several by the first id
+     * and a digest of all ids, so retries of different events that start with the same one are kept apart.
+     */
+    default String retryKey() {
+        List<SpsEvent> events = forkedEvents();
+        if (events.size() == 1) {
+            return id();
+        }
+        StringBuilder ids = new StringBuilder();
+        for (SpsEvent event : events) {
+            ids.append(event.id()).append('\n');
+        }
+        return id() + "_" + UUID.nameUUIDFromBytes(ids.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
 }
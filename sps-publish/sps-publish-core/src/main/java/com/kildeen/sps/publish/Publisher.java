@@ -12,11 +12,12 @@ import org.slf4j.LoggerFactory;
 import java.lang.invoke.MethodHandles;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -31,12 +32,22 @@ import java.util.concurrent.TimeUnit;
  * {@code RateLimiter} is available for protecting the server.
  */
 public class Publisher implements AutoCloseable {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 10_000;
     static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final int MAX_DUE_RETRIES = 1000;
+    private static final Duration DUE_RETRY_WAIT = Duration.ofMillis(500);
+    // Retries this publisher saves are claimed when due, the dispatcher's claims only pick up those of others
+    private static final Duration MAX_PERSISTED_CLAIM_WAIT = Duration.ofSeconds(30);
 
     private final ScheduledExecutorService retryQueueScheduler;
-    private final ExecutorService retryExecutor;
+    private final Thread retryQueueDispatcher;
+    private final Executor retryExecutor;
+    private final ExecutorService ownedRetryExecutor;
     private final Sender sender;
     private final RetryQueue retryQueue;
+    private final PersistentRetries persistentRetries;
+    private final ForkCoalescer coalescer;
+    private final InFlightWindow inFlight;
     private final RetryPolicies retryPolicies;
     private final Database database;
     private final DeadLetterQueue deadLetterQueue;
@@ -54,11 +65,33 @@ public class Publisher implements AutoCloseable {
                      RetryPolicies retryPolicies,
                      Database database,
                      DeadLetterQueue deadLetterQueue) {
+        this(sender, retryQueue, retryPolicies, database, deadLetterQueue, 1, Duration.ZERO, DEFAULT_MAX_IN_FLIGHT,
+                null);
+    }
+
+    /**
+     * @param maxBatchEvents forks for the same subscriber and event type are coalesced into one send of up to this
+     *                       many events, 1 sends every fork on its own
+     * @param maxBatchDelay  how long the first event of a coalesced batch waits for more
+     * @param maxInFlight    forked events sent or awaiting a retry at most, publish blocks while this many are
+     * @param retryExecutor  runs retries, the caller owns it. Null uses two platform threads of the publisher's own
+     */
+    public Publisher(Sender sender,
+                     RetryQueue retryQueue,
+                     RetryPolicies retryPolicies,
+                     Database database,
+                     DeadLetterQueue deadLetterQueue,
+                     int maxBatchEvents,
+                     Duration maxBatchDelay,
+                     int maxInFlight,
+                     Executor retryExecutor) {
         this.sender = sender;
         this.retryQueue = retryQueue;
         this.retryPolicies = retryPolicies;
         this.deadLetterQueue = deadLetterQueue;
         this.database = database;
+        this.inFlight = new InFlightWindow(maxInFlight);
+        this.persistentRetries = database != null && database.storesRetries() ? new PersistentRetries(database) : null;
 
         // Instance-scoped executors with proper thread naming
         this.retryQueueScheduler = Executors.newScheduledThreadPool(1, r -> {
@@ -66,41 +99,127 @@ public class Publisher implements AutoCloseable {
             t.setDaemon(true);
             return t;
         });
-        this.retryExecutor = Executors.newFixedThreadPool(2, r -> {
+        this.coalescer = maxBatchEvents > 1
+                ? new ForkCoalescer(maxBatchEvents, maxBatchDelay, retryQueueScheduler, this::sendAsync)
+                : null;
+        this.ownedRetryExecutor = retryExecutor == null ? Executors.newFixedThreadPool(2, r -> {
             Thread t = new Thread(r, "publisher-retry-worker");
             t.setDaemon(true);
             return t;
-        });
+        }) : null;
+        this.retryExecutor = retryExecutor != null ? retryExecutor : ownedRetryExecutor;
 
-        retryQueueScheduler.scheduleAtFixedRate(this::retryFromQueue,
-                200,
-                2000,
-                TimeUnit.MILLISECONDS);
+        this.retryQueueDispatcher = Thread.ofPlatform()
+                .name("publisher-retry-dispatcher")
+                .daemon()
+                .start(this::dispatchDueRetries);
 
         LOG.info("Publisher initialized with retry support");
     }
 
-    private void retryFromQueue() {
-        if (closed) {
-            return;
+    /**
+     * Hands every retry to the retry workers as soon as it is due, so retry throughput is bounded by sending.
+     * Persistent retries are claimed from the database on the same loop, each empty claim doubles the wait before
+     * the next one up to {@link #MAX_PERSISTED_CLAIM_WAIT}.
+     */
+    private void dispatchDueRetries() {
+        long claimWaitNanos = DUE_RETRY_WAIT.toNanos();
+        long nextClaim = System.nanoTime();
+        while (!closed) {
+            try {
+                Duration wait = DUE_RETRY_WAIT;
+                if (persistentRetries != null && System.nanoTime() - nextClaim >= 0) {
+                    int claimed = dispatchPersistedRetries();
+                    if (claimed == MAX_DUE_RETRIES) {
+                        // More are due, do not wait on the in-memory queue before claiming again
+                        wait = Duration.ZERO;
+                        claimWaitNanos = 0;
+                    } else if (claimed > 0) {
+                        claimWaitNanos = DUE_RETRY_WAIT.toNanos();
+                    } else {
+                        claimWaitNanos = Math.min(Math.max(claimWaitNanos * 2, DUE_RETRY_WAIT.toNanos()),
+                                MAX_PERSISTED_CLAIM_WAIT.toNanos());
+                    }
+                    nextClaim = System.nanoTime() + claimWaitNanos;
+                }
+                for (RetryQueue.TimestampedPublishableEvent due : retryQueue.takeDue(MAX_DUE_RETRIES, wait)) {
+                    doRetry(due.event(), due.retryPolicy().deliveryType());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOG.error("Could not dispatch due retries", e);
+            }
         }
-        PublishableEvent event = retryQueue.next();
-        if (event != null) {
-            RetryPolicies.RetryPolicy retryPolicy = retryPolicies.forAttempt(event.retries(), event.deliveryTypes());
-            retry(event, retryPolicy);
+    }
+
+    /**
+     * Forks the events and sends them without waiting for room in the in-flight window or tracking their outcome,
+     * for callers that do not ask for receipts and never blocked on delivery.
+     */
+    void send(Subscriptions subscriptions, Collection<SpsEvent> events) {
+        for (PublishableEvent fork : new EventFork(events, subscriptions.subscriptions()).fork().forks()) {
+            if (coalescer != null) {
+                coalescer.add(fork);
+            } else {
+                sendAsync(fork);
+            }
         }
     }
 
-    int publish(Subscriptions subscriptions, Collection<SpsEvent> events) {
+    /**
+     * Forks the events and sends them, blocking while the in-flight window is full.
+     *
+     * @return completes once every forked event has its final receipt: ACK, ABANDONED, NACK when retries gave up,
+     * or UNKNOWN when it was handed to the persistent retry queue or the publisher closed first. Forked ids are
+     * the event id suffixed with the subscriber id, so there is one receipt per event and subscriber
+     */
+    CompletableFuture<IdWithReceipts> publish(Subscriptions subscriptions, Collection<SpsEvent> events) {
         EventFork eventFork = new EventFork(events, subscriptions.subscriptions());
-        eventFork.fork().forks().forEach(this::sendAsync);
-        return 10;
+        List<CompletableFuture<IdWithReceipts.IdWithReceipt>> outcomes = new ArrayList<>();
+        for (PublishableEvent fork : eventFork.fork().forks()) {
+            try {
+                outcomes.addAll(inFlight.enter(fork));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.warn("Interrupted waiting for room to publish to {}, remaining forks not sent",
+                        fork.subscription().subscriber().subId());
+                return CompletableFuture.failedFuture(e);
+            }
+            if (coalescer != null) {
+                coalescer.add(fork);
+            } else {
+                sendAsync(fork);
+            }
+        }
+        return CompletableFuture.allOf(outcomes.toArray(CompletableFuture[]::new))
+                .thenApply(done -> new IdWithReceipts(outcomes.stream().map(CompletableFuture::join).toList()));
+    }
+
+    /**
+     * Times retries and coalesced flushes, tasks scheduled on it must hand blocking work to another thread.
+     */
+    ScheduledExecutorService scheduler() {
+        return retryQueueScheduler;
+    }
+
+    /**
+     * Forked events currently sent or waiting for a retry.
+     */
+    public int inFlight() {
+        return inFlight.inFlight();
     }
 
     private void sendAsync(PublishableEvent fork) {
         try {
-            CompletableFuture<IdWithReceiptsResult> response = sender.send(fork);
-            response.thenAccept(res -> handleResponse(res, fork));
+            sender.send(fork).whenComplete((res, e) -> {
+                if (e != null) {
+                    handleRetry(fork, e instanceof CompletionException ce ? ce : new CompletionException(e));
+                } else {
+                    handleResponse(res, fork);
+                }
+            });
         } catch (CompletionException e) {
             handleRetry(fork, e);
         }
@@ -114,16 +233,19 @@ public class Publisher implements AutoCloseable {
 
     private void handleResponse(IdWithReceiptsResult res, PublishableEvent event) {
         if (res.allEvents() == Receipt.ACK) {
+            inFlight.complete(event.forkedEvents(), Receipt.ACK);
             return;
         }
-        List<SpsEvent> spsEvents = event.forkedEvents().stream()
-                .filter(e -> failed(e, res))
-                .toList();
+        List<SpsEvent> spsEvents = failed(event.forkedEvents(), res);
 
         if (spsEvents.isEmpty()) {
             return;
         }
         RetryPolicies.RetryPolicy retryPolicy = retryPolicies.forAttempt(event.retries(), event.deliveryTypes());
+        if (retryPolicy == null) {
+            inFlight.complete(spsEvents, Receipt.NACK);
+            return;
+        }
         retry(new RetryEvent(event.subscription(),
                 spsEvents,
                 event.retries(),
@@ -135,28 +257,52 @@ public class Publisher implements AutoCloseable {
         return List.of(deliveryType);
     }
 
-    private boolean failed(SpsEvent e, IdWithReceiptsResult res) {
-        Optional<IdWithReceipts.IdWithReceipt> any = res.idWithReceipts().stream()
-                .filter(id -> id.id().equals(e.id())).findAny();
-        return any.isEmpty() || any.get().receipt() != Receipt.ACK;
-
+    /**
+     * Completes the acked events and returns the others, in one pass. Receivers answer in the order the events were
+     * sent, so each receipt is first looked for at the position of its event, the result is only indexed by id
+     * once that misses.
+     */
+    private List<SpsEvent> failed(List<SpsEvent> forkedEvents, IdWithReceiptsResult res) {
+        List<IdWithReceipts.IdWithReceipt> receipts = res.idWithReceipts();
+        IdWithReceiptsResult indexed = null;
+        List<SpsEvent> failed = List.of();
+        int i = 0;
+        for (SpsEvent e : forkedEvents) {
+            Receipt receipt;
+            IdWithReceipts.IdWithReceipt atPosition = i < receipts.size() ? receipts.get(i) : null;
+            if (atPosition != null && atPosition.id().equals(e.id())) {
+                receipt = atPosition.receipt();
+            } else {
+                if (indexed == null) {
+                    indexed = res.indexed();
+                }
+                receipt = indexed.receipt(e.id());
+            }
+            i++;
+            if (receipt == Receipt.ACK) {
+                inFlight.complete(e, Receipt.ACK);
+            } else {
+                if (failed.isEmpty()) {
+                    failed = new ArrayList<>(forkedEvents.size() - i + 1);
+                }
+                failed.add(e);
+            }
+        }
+        return failed;
     }
 
     private void retry(PublishableEvent event, RetryPolicies.RetryPolicy retryPolicy) {
         if (closed) {
             LOG.debug("Publisher closed, skipping retry for event {}", event.id());
+            inFlight.complete(event.forkedEvents(), Receipt.UNKNOWN);
             return;
         }
 
         if (retryPolicy == null) {
+            inFlight.complete(event.forkedEvents(), Receipt.NACK);
             return;
         }
 
-        boolean saved = false;
-        if (retryPolicy.retention() == RetryPolicies.RetryPolicy.RetentionType.PERSISTENT) {
-            saved = retryQueue.save(event, retryPolicy);
-        }
-
         // Check for event abandonment
         if (retryPolicy.abandonEventAfterMs() > 0) {
             Duration aliveDuration = Duration.between(event.createdAt(), Instant.now());
@@ -168,6 +314,7 @@ public class Publisher implements AutoCloseable {
                             deadLetterQueue.send(e, "max_retries_exceeded", event.retries()));
                 }
                 event.forkedEvents().forEach(e -> database.ackOrNack(e, Receipt.ABANDONED));
+                inFlight.complete(event.forkedEvents(), Receipt.ABANDONED);
                 return;
             }
         }
@@ -176,10 +323,33 @@ public class Publisher implements AutoCloseable {
             event.subscription().refreshUrl();
         }
 
+        if (retryPolicy.retention() == RetryPolicies.RetryPolicy.RetentionType.PERSISTENT) {
+            // Sent by dispatchDueRetries once due, events that are already queued are retried only once
+            if (persistentRetries != null) {
+                try {
+                    if (persistentRetries.save(event, retryPolicy)) {
+                        // Claim it when due rather than on the dispatcher's next pass, any other publisher may too.
+                        // Claimed on a retry worker, the scheduler also flushes coalesced forks
+                        retryQueueScheduler.schedule(this::claimPersistedRetriesAsync, retryPolicy.waitInMs(),
+                                TimeUnit.MILLISECONDS);
+                    }
+                    // Its outcome is no longer known here, the retry may be sent by another publisher
+                    inFlight.complete(event.forkedEvents(), Receipt.UNKNOWN);
+                    return;
+                } catch (RuntimeException e) {
+                    LOG.error("Could not persist retry of {}, keeping it in memory", event.id(), e);
+                }
+            }
+            if (!retryQueue.save(event, retryPolicy)) {
+                // The queued retry sends the same events, its outcome is not reported to these
+                inFlight.complete(event.forkedEvents(), Receipt.UNKNOWN);
+            }
+            return;
+        }
+
         // Non-blocking retry: schedule with delay instead of Thread.sleep()
         long waitMs = retryPolicy.waitInMs();
-        if ((saved || retryPolicy.retention() == RetryPolicies.RetryPolicy.RetentionType.IN_MEMORY)
-                && waitMs > 0) {
+        if (waitMs > 0) {
             // Schedule delayed retry - does not block the current thread
             retryQueueScheduler.schedule(
                     () -> doRetry(event, retryPolicy.deliveryType()),
@@ -203,26 +373,90 @@ public class Publisher implements AutoCloseable {
         }, retryExecutor);
     }
 
+    private void claimPersistedRetriesAsync() {
+        if (closed) {
+            return;
+        }
+        CompletableFuture.runAsync(this::dispatchPersistedRetries, retryExecutor);
+    }
+
+    /**
+     * Claims the persistent retries that are due and hands them to the retry workers.
+     *
+     * @return the number of retries claimed
+     */
+    private int dispatchPersistedRetries() {
+        if (closed) {
+            return 0;
+        }
+        try {
+            List<PersistentRetries.Claimed> claimed = persistentRetries.claimDue(MAX_DUE_RETRIES);
+            claimed.forEach(this::sendPersistedRetry);
+            return claimed.size();
+        } catch (RuntimeException e) {
+            LOG.error("Could not claim persistent retries", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Sends a retry claimed from the database and completes it once the outcome has been handled, a failed send
+     * is saved again by the retry policy.
+     */
+    private void sendPersistedRetry(PersistentRetries.Claimed claimed) {
+        if (closed) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> {
+            RetryEvent retryEvent = new RetryEvent(claimed.subscription(), claimed.events(),
+                    claimed.row().retries() + 1, deliveryTypes(DeliveryType.valueOf(claimed.row().deliveryType())),
+                    claimed.row().createdAt());
+            try {
+                sender.send(retryEvent).whenComplete((res, e) -> {
+                    if (e != null) {
+                        handleRetry(retryEvent, e instanceof CompletionException ce ? ce : new CompletionException(e));
+                    } else {
+                        handleResponse(res, retryEvent);
+                    }
+                    persistentRetries.complete(claimed.row());
+                });
+            } catch (CompletionException e) {
+                handleRetry(retryEvent, e);
+                persistentRetries.complete(claimed.row());
+            }
+        }, retryExecutor);
+    }
+
     @Override
     public void close() {
+        if (coalescer != null) {
+            coalescer.flushAll();
+        }
         closed = true;
         LOG.info("Shutting down Publisher...");
 
         retryQueueScheduler.shutdown();
-        retryExecutor.shutdown();
+        retryQueueDispatcher.interrupt();
+        if (ownedRetryExecutor != null) {
+            ownedRetryExecutor.shutdown();
+        }
 
         try {
+            retryQueueDispatcher.join(TimeUnit.SECONDS.toMillis(5));
             if (!retryQueueScheduler.awaitTermination(5, TimeUnit.SECONDS)) {
                 retryQueueScheduler.shutdownNow();
             }
-            if (!retryExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                retryExecutor.shutdownNow();
+            if (ownedRetryExecutor != null && !ownedRetryExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                ownedRetryExecutor.shutdownNow();
             }
         } catch (InterruptedException e) {
             retryQueueScheduler.shutdownNow();
-            retryExecutor.shutdownNow();
+            if (ownedRetryExecutor != null) {
+                ownedRetryExecutor.shutdownNow();
+            }
             Thread.currentThread().interrupt();
         }
+        inFlight.completeAll(Receipt.UNKNOWN);
 
         LOG.info("Publisher shutdown complete");
     }
@@ -0,0 +1,146 @@
+package com.kildeen.sps.publish;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A subscription rename schema compiled into parallel source/target key arrays.
+ *
+ * <p>Plans are compiled once per distinct subSchema and cached, the least recently used one is evicted beyond
+ * {@link #MAX_CACHED_PLANS}. Forking an event then only does one lookup per renamed field in the original data and
+ * writes the values into a fixed-size {@link ArrayMap}.
+ */
+final class RenamePlan {
+
+    private static final int MAX_CACHED_PLANS = 4096;
+    // Guarded by itself, looked up once per subscription and fork rather than per event
+    private static final Map<Map<String, String>, RenamePlan> PLANS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Map<String, String>, RenamePlan> eldest) {
+            return size() > MAX_CACHED_PLANS;
+        }
+    };
+
+    private final String[] sourceKeys;
+    private final String[] targetKeys;
+
+    private RenamePlan(String[] sourceKeys, String[] targetKeys) {
+        this.sourceKeys = sourceKeys;
+        this.targetKeys = targetKeys;
+    }
+
+    static RenamePlan of(Subscriptions.Subscription subscription) {
+        Map<String, String> subSchema = subscription.subSchema();
+        synchronized (PLANS) {
+            RenamePlan plan = PLANS.get(subSchema);
+            if (plan == null) {
+                plan = compile(subSchema);
+                // Not Map.copyOf, subSchemas read from JSON may rename a field to null
+                PLANS.put(Collections.unmodifiableMap(new HashMap<>(subSchema)), plan);
+            }
+            return plan;
+        }
+    }
+
+    private static RenamePlan compile(Map<String, String> subSchema) {
+        // Several source keys renamed to the same target: the last one wins, as with a HashMap put
+        Map<String, String> sourceByTarget = new LinkedHashMap<>();
+        subSchema.forEach((source, target) -> sourceByTarget.put(target, source));
+
+        String[] sourceKeys = new String[sourceByTarget.size()];
+        String[] targetKeys = new String[sourceByTarget.size()];
+        int i = 0;
+        for (Map.Entry<String, String> entry : sourceByTarget.entrySet()) {
+            targetKeys[i] = entry.getKey();
+            sourceKeys[i] = entry.getValue();
+            i++;
+        }
+        return new RenamePlan(sourceKeys, targetKeys);
+    }
+
+    Map<String, Object> apply(Map<String, Object> data) {
+        Object[] values = new Object[sourceKeys.length];
+        for (int i = 0; i < sourceKeys.length; i++) {
+            values[i] = data.get(sourceKeys[i]);
+        }
+        return new ArrayMap(targetKeys, values);
+    }
+
+    /**
+     * Read-only map over the plan's shared key array and one value array per event.
+     */
+    static final class ArrayMap extends AbstractMap<String, Object> {
+        private final String[] keys;
+        private final Object[] values;
+
+        private ArrayMap(String[] keys, Object[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int index = indexOf(key);
+            return index < 0 ? null : values[index];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return keys.length;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < keys.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (next >= keys.length) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, Object> entry = new SimpleImmutableEntry<>(keys[next], values[next]);
+                            next++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (Objects.equals(keys[i], key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
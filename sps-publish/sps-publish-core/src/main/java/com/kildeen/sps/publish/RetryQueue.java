@@ -5,24 +5,29 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Thread-safe retry queue for events awaiting retry.
- * Uses O(1) lookup for duplicate detection and atomic operations for thread safety.
+ * Uses O(1) lookup for duplicate detection and orders events by when they are due, so only due events are ever
+ * taken and waiting ones are never touched.
  */
 public class RetryQueue {
 
     private static final Logger LOG = LoggerFactory.getLogger(RetryQueue.class);
 
-    private final ConcurrentLinkedQueue<TimestampedPublishableEvent> queue = new ConcurrentLinkedQueue<>();
-    // O(1) lookup for duplicate detection instead of O(n) stream search
+    private final DelayQueue<TimestampedPublishableEvent> queue = new DelayQueue<>();
+    // O(1) lookup for duplicate detection instead of O(n) stream search, keyed by PublishableEvent.retryKey()
     private final Set<String> eventIds = ConcurrentHashMap.newKeySet();
 
     /**
-     * Saves an event for retry if not already queued.
+     * Saves an event for retry if the same events are not already queued, it becomes due after the policy's wait.
      *
      * @param event the event to retry
      * @param retryPolicy the retry policy to apply
@@ -30,13 +35,14 @@ public class RetryQueue {
      */
     public boolean save(PublishableEvent event, RetryPolicies.RetryPolicy retryPolicy) {
         // O(1) duplicate check using ConcurrentHashMap-backed Set
-        if (!eventIds.add(event.id())) {
+        if (!eventIds.add(event.retryKey())) {
             LOG.debug("Event {} already in retry queue, skipping", event.id());
             return false;
         }
 
         TimestampedPublishableEvent stamped = new TimestampedPublishableEvent(
-                event, Instant.now(), event.createdAt(), retryPolicy);
+                event, Instant.now(), event.createdAt(), retryPolicy,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryPolicy.waitInMs()));
         queue.add(stamped);
         LOG.debug("Event {} added to retry queue", event.id());
         return true;
@@ -44,28 +50,36 @@ public class RetryQueue {
 
     /**
      * Retrieves the next event ready for retry.
-     * Uses atomic poll() to avoid race conditions between peek and poll.
      *
      * @return the next event if ready, null otherwise
      */
     public PublishableEvent next() {
-        // Atomic poll - no race condition with peek/poll pattern
         TimestampedPublishableEvent polled = queue.poll();
         if (polled == null) {
             return null;
         }
+        eventIds.remove(polled.event.retryKey());
+        LOG.debug("Event {} ready for retry", polled.event.id());
+        return polled.event;
+    }
 
-        Duration elapsed = Duration.between(polled.saveForRetry, Instant.now());
-        if (elapsed.toMillis() >= polled.retryPolicy().waitInMs()) {
-            // Event is ready for retry - remove from ID tracking
-            eventIds.remove(polled.event.id());
-            LOG.debug("Event {} ready for retry after {} ms", polled.event.id(), elapsed.toMillis());
-            return polled.event;
-        } else {
-            // Not ready yet - re-add to back of queue
-            queue.add(polled);
-            return null;
+    /**
+     * Waits up to the timeout for an event to become due, then takes it together with every other event that is
+     * due by now, up to max.
+     *
+     * @return the due events, empty when none became due within the timeout
+     */
+    List<TimestampedPublishableEvent> takeDue(int max, Duration timeout) throws InterruptedException {
+        TimestampedPublishableEvent first = queue.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        if (first == null) {
+            return List.of();
         }
+        List<TimestampedPublishableEvent> due = new ArrayList<>();
+        due.add(first);
+        queue.drainTo(due, max - 1);
+        due.forEach(stamped -> eventIds.remove(stamped.event.retryKey()));
+        LOG.debug("{} events ready for retry", due.size());
+        return due;
     }
 
     /**
@@ -76,6 +90,19 @@ public class RetryQueue {
     }
 
     record TimestampedPublishableEvent(PublishableEvent event, Instant firstSeen, Instant saveForRetry,
-                                       RetryPolicies.RetryPolicy retryPolicy) {
+                                       RetryPolicies.RetryPolicy retryPolicy, long dueNanos) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other instanceof TimestampedPublishableEvent stamped) {
+                return Long.compare(dueNanos - stamped.dueNanos, 0);
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
     }
 }
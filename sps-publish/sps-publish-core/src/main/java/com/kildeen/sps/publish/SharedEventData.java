@@ -0,0 +1,59 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.sps.json.Json;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only event data shared by every schema-less fork of an event. The JSON of the data is the same for each of
+ * those forks, so it is written once, on first use, and then reused by every request that carries the event.
+ */
+final class SharedEventData extends AbstractMap<String, Object> {
+
+    private final Map<String, Object> data;
+    private volatile Written json;
+
+    SharedEventData(Map<String, Object> data) {
+        this.data = Collections.unmodifiableMap(data);
+    }
+
+    /**
+     * The data as JSON, the returned array is shared and must not be modified. Only reused for the writer that
+     * wrote it, another writer may be configured differently.
+     */
+    byte[] json(Json writer) {
+        Written written = json;
+        if (written == null || written.writer() != writer) {
+            // Racing forks may both write it, the results are equal
+            written = new Written(writer, writer.writeValueAsBytes(data));
+            json = written;
+        }
+        return written.bytes();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return data.entrySet();
+    }
+
+    @Override
+    public Object get(Object key) {
+        return data.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return data.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    private record Written(Json writer, byte[] bytes) {
+    }
+}
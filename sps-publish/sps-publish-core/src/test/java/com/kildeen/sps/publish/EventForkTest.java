@@ -3,10 +3,12 @@ package com.kildeen.sps.publish;
 import com.kildeen.sps.BasicSpsEvents;
 import org.junit.jupiter.api.Test;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.*;
 
 class EventForkTest {
@@ -47,4 +49,75 @@ class EventForkTest {
                 );
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void schema_less_forks_share_one_read_only_view_of_the_data() {
+        BasicSpsEvents.BasicSpsEvent event =
+                new BasicSpsEvents.BasicSpsEvent("type", "id", new HashMap<>(Map.of("key", "value")));
+
+        List<Subscriptions.Subscription> subscriptions = List.of(
+                new Subscriptions.Subscription(
+                        new Subscriptions.Subscription.Subscriber("firstsub", "firsturl"), "type", Map.of()),
+                new Subscriptions.Subscription(
+                        new Subscriptions.Subscription.Subscriber("secondsub", "secondurl"), "type", Map.of()),
+                new Subscriptions.Subscription(
+                        new Subscriptions.Subscription.Subscriber("thirdsub", "thirdurl"), "type",
+                        Map.of("key", "legacykey")));
+
+        List<PublishableEvent> forks = new EventFork(List.of(event), subscriptions).fork().forks();
+
+        Map<String, Object> first = forks.get(0).forkedEvents().get(0).data();
+        Map<String, Object> second = forks.get(1).forkedEvents().get(0).data();
+        Map<String, Object> renamed = forks.get(2).forkedEvents().get(0).data();
+
+        assertAll(
+                () -> assertThat(first).isSameAs(second).containsEntry("key", "value"),
+                () -> assertThatThrownBy(() -> first.put("other", "value"))
+                        .isInstanceOf(UnsupportedOperationException.class),
+                () -> assertThat(renamed).isNotSameAs(first).containsOnlyKeys("legacykey")
+        );
+    }
+
+    @Test
+    void renamed_forks_match_the_subscription_schema() {
+        Map<String, Object> data = new HashMap<>();
+        Map<String, String> subSchema = new HashMap<>();
+        for (int i = 0; i < 30; i++) {
+            data.put("field" + i, i);
+            subSchema.put("field" + i, "renamed" + i);
+        }
+        subSchema.put("missing", "absent");
+        BasicSpsEvents.BasicSpsEvent event = new BasicSpsEvents.BasicSpsEvent("type", "id", data);
+        Subscriptions.Subscription subscription = new Subscriptions.Subscription(
+                new Subscriptions.Subscription.Subscriber("sub", "url"), "type", subSchema);
+
+        Map<String, Object> expected = new HashMap<>();
+        subSchema.forEach((from, to) -> expected.put(to, data.get(from)));
+
+        Map<String, Object> forked = new EventFork(List.of(event, event), List.of(subscription)).fork()
+                .forks().get(0).forkedEvents().get(1).data();
+
+        assertAll(
+                () -> assertThat(forked).isEqualTo(expected).hasSize(31),
+                () -> assertThat(forked.get("renamed29")).isEqualTo(29),
+                () -> assertThat(forked).containsEntry("absent", null),
+                () -> assertThat(forked.get("field1")).isNull()
+        );
+    }
+
+    @Test
+    void field_renamed_to_null_is_kept_under_a_null_key() {
+        Map<String, String> subSchema = new HashMap<>();
+        subSchema.put("key", "legacykey");
+        subSchema.put("dropped", null);
+        BasicSpsEvents.BasicSpsEvent event =
+                new BasicSpsEvents.BasicSpsEvent("type", "id", Map.of("key", "value", "dropped", "gone"));
+        Subscriptions.Subscription subscription = new Subscriptions.Subscription(
+                new Subscriptions.Subscription.Subscriber("sub", "url"), "type", subSchema);
+
+        Map<String, Object> forked = new EventFork(List.of(event), List.of(subscription)).fork()
+                .forks().get(0).forkedEvents().get(0).data();
+
+        assertThat(forked).containsEntry("legacykey", "value").containsEntry(null, "gone").hasSize(2);
+    }
+}
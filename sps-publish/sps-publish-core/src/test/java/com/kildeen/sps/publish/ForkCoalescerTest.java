@@ -0,0 +1,141 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.sps.Client;
+import com.kildeen.sps.IdWithReceipts;
+import com.kildeen.sps.IdWithReceiptsResult;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ForkCoalescer Tests")
+class ForkCoalescerTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<PublishableEvent> sent = new CopyOnWriteArrayList<>();
+    private final Subscriptions.Subscription first = subscription("first");
+    private final Subscriptions.Subscription second = subscription("second");
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Should send a batch as soon as it is full")
+    void shouldSendFullBatch() {
+        ForkCoalescer coalescer = new ForkCoalescer(3, Duration.ofMinutes(1), scheduler, sent::add);
+
+        coalescer.add(fork(first, "a"));
+        coalescer.add(fork(first, "b", "c"));
+        coalescer.add(fork(first, "d"));
+
+        assertThat(sent).singleElement()
+                .satisfies(batch -> assertThat(ids(batch)).containsExactly("a", "b", "c"));
+    }
+
+    @Test
+    @DisplayName("Should send a partial batch once the delay has passed")
+    void shouldSendPartialBatchAfterDelay() throws InterruptedException {
+        ForkCoalescer coalescer = new ForkCoalescer(100, Duration.ofMillis(50), scheduler, sent::add);
+
+        coalescer.add(fork(first, "a"));
+        coalescer.add(fork(first, "b"));
+        assertThat(sent).isEmpty();
+
+        Thread.sleep(150);
+
+        assertThat(sent).singleElement()
+                .satisfies(batch -> assertThat(ids(batch)).containsExactly("a", "b"));
+    }
+
+    @Test
+    @DisplayName("Should batch each subscriber on its own")
+    void shouldBatchPerSubscriber() {
+        ForkCoalescer coalescer = new ForkCoalescer(100, Duration.ofMinutes(1), scheduler, sent::add);
+
+        coalescer.add(fork(first, "a"));
+        coalescer.add(fork(second, "b"));
+        coalescer.add(fork(first, "c"));
+        coalescer.flushAll();
+
+        assertThat(sent).hasSize(2);
+        assertThat(sent).filteredOn(batch -> batch.subscription() == first)
+                .singleElement().satisfies(batch -> assertThat(ids(batch)).containsExactly("a", "c"));
+        assertThat(sent).filteredOn(batch -> batch.subscription() == second)
+                .singleElement().satisfies(batch -> assertThat(ids(batch)).containsExactly("b"));
+    }
+
+    @Test
+    @DisplayName("Should retry only the events of a coalesced batch that failed")
+    void shouldRetryOnlyFailedEvents() throws InterruptedException {
+        List<List<String>> posts = new CopyOnWriteArrayList<>();
+        Client client = new Client() {
+            @Override
+            public CompletableFuture<IdWithReceiptsResult> post(Subscriptions.Subscription subscription,
+                                                               SpsEvents spsEvents) {
+                List<String> ids = spsEvents.spsEvents().stream().map(SpsEvent::id).toList();
+                boolean firstAttempt = posts.isEmpty();
+                posts.add(ids);
+                List<IdWithReceipts.IdWithReceipt> receipts = ids.stream()
+                        .map(id -> new IdWithReceipts.IdWithReceipt(id, spsEvents.eventType(),
+                                firstAttempt && id.startsWith("b") ? Receipt.NACK : Receipt.ACK, Instant.now()))
+                        .toList();
+                return CompletableFuture.completedFuture(() -> receipts);
+            }
+
+            @Override
+            public EnumSet<DeliveryType> supports() {
+                return EnumSet.of(DeliveryType.HTTP);
+            }
+        };
+        RetryPolicies retryPolicies = new RetryPolicies(List.of(RetryPolicies.RetryPolicy.newBuilder()
+                .withForRetryAttempt(0, 3)
+                .build()), List.of());
+
+        try (Publisher publisher = new Publisher(new Sender(List.of(client)), new RetryQueue(), retryPolicies,
+                null, null, 3, Duration.ofMinutes(1), Publisher.DEFAULT_MAX_IN_FLIGHT, null)) {
+            for (String id : List.of("a", "b", "c")) {
+                publisher.publish(new Subscriptions(List.of(first)),
+                        List.of(new EventFork.ForkedEvents.Fork.ForkSpsEvent("coalesce_01", id, Map.of())));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (posts.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+
+        assertThat(posts).containsExactly(List.of("a_first", "b_first", "c_first"), List.of("b_first"));
+    }
+
+    private static Subscriptions.Subscription subscription(String subId) {
+        return new Subscriptions.Subscription(
+                new Subscriptions.Subscription.Subscriber(subId, "http://" + subId), "coalesce_01", Map.of());
+    }
+
+    private static PublishableEvent fork(Subscriptions.Subscription subscription, String... ids) {
+        List<SpsEvent> events = Arrays.stream(ids)
+                .<SpsEvent>map(id -> new EventFork.ForkedEvents.Fork.ForkSpsEvent("coalesce_01", id, Map.of()))
+                .toList();
+        return new EventFork.ForkedEvents.Fork(subscription, events, subscription.deliveryType(), Instant.now());
+    }
+
+    private static List<String> ids(PublishableEvent batch) {
+        return batch.forkedEvents().stream().map(SpsEvent::id).toList();
+    }
+}
@@ -0,0 +1,75 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.sps.SpsEvent;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("RetryQueue Tests")
+class RetryQueueTest {
+
+    private final Subscriptions.Subscription subscription = new Subscriptions.Subscription(
+            new Subscriptions.Subscription.Subscriber("sub", "http://sub"), "retry_01", Map.of());
+
+    @Test
+    @DisplayName("Should release events in the order they become due")
+    void shouldReleaseInDueOrder() throws InterruptedException {
+        RetryQueue queue = new RetryQueue();
+        queue.save(fork("late"), policy(60));
+        queue.save(fork("early"), policy(10));
+        queue.save(fork("waiting"), policy(60_000));
+
+        assertThat(queue.next()).isNull();
+
+        List<RetryQueue.TimestampedPublishableEvent> due = new ArrayList<>(queue.takeDue(10, Duration.ofSeconds(2)));
+        Thread.sleep(60);
+        due.addAll(queue.takeDue(10, Duration.ofSeconds(2)));
+
+        assertThat(due).extracting(stamped -> stamped.event().id()).containsExactly("early", "late");
+        assertThat(queue.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should take every due event at once up to the max")
+    void shouldTakeDueEventsInBatches() throws InterruptedException {
+        RetryQueue queue = new RetryQueue();
+        for (int i = 0; i < 5; i++) {
+            queue.save(fork("id" + i), policy(0));
+        }
+
+        assertThat(queue.takeDue(3, Duration.ofSeconds(1))).hasSize(3);
+        assertThat(queue.takeDue(3, Duration.ofSeconds(1))).hasSize(2);
+        assertThat(queue.takeDue(3, Duration.ofMillis(10))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should skip events already queued until they are taken")
+    void shouldSkipDuplicatesUntilTaken() {
+        RetryQueue queue = new RetryQueue();
+
+        assertThat(queue.save(fork("dup"), policy(0))).isTrue();
+        assertThat(queue.save(fork("dup"), policy(0))).isFalse();
+        assertThat(queue.next().id()).isEqualTo("dup");
+        assertThat(queue.save(fork("dup"), policy(0))).isTrue();
+    }
+
+    private static RetryPolicies.RetryPolicy policy(int waitInMs) {
+        return RetryPolicies.RetryPolicy.newBuilder()
+                .withMaxRetries(3)
+                .withWaitInMs(waitInMs)
+                .build();
+    }
+
+    private EventFork.ForkedEvents.Fork fork(String id) {
+        SpsEvent event = new EventFork.ForkedEvents.Fork.ForkSpsEvent("retry_01", id, Map.of());
+        return new EventFork.ForkedEvents.Fork(subscription, List.of(event), subscription.deliveryType(),
+                Instant.now());
+    }
+}
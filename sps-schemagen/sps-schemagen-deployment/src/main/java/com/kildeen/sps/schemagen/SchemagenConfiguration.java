@@ -5,6 +5,8 @@ import static java.lang.invoke.MethodHandles.lookup;
 import com.kildeen.embeddeddb.EmbeddedDatabase;
 import com.kildeen.sps.inlet.Inlet;
 import com.kildeen.sps.inlet.InletService;
+import com.kildeen.sps.json.BinaryCodec;
+import com.kildeen.sps.json.SmileCodec;
 import com.kildeen.sps.persistence.DatabaseProvider;
 import com.kildeen.sps.persistence.Database;
 import com.kildeen.sps.publish.Publish;
@@ -68,4 +70,10 @@ public class SchemagenConfiguration {
                 .withReceivers(List.of(addSchemaReceiver, publishSchemaReceiver))
                 .build();
     }
+
+    @Produces
+    @Singleton
+    public BinaryCodec binaryCodec() {
+        return new SmileCodec();
+    }
 }
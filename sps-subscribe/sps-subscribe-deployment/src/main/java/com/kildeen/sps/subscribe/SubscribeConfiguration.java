@@ -2,6 +2,8 @@ package com.kildeen.sps.subscribe;
 
 import com.kildeen.sps.inlet.Inlet;
 import com.kildeen.sps.inlet.InletService;
+import com.kildeen.sps.json.BinaryCodec;
+import com.kildeen.sps.json.SmileCodec;
 import com.kildeen.sps.persistence.DatabaseProvider;
 import com.kildeen.sps.persistence.Database;
 import com.kildeen.embeddeddb.EmbeddedDatabase;
@@ -58,4 +60,10 @@ public class SubscribeConfiguration {
                 .withReceivers(List.of(receiver))
                 .build();
     }
+
+    @Produces
+    @Singleton
+    public BinaryCodec binaryCodec() {
+        return new SmileCodec();
+    }
 }
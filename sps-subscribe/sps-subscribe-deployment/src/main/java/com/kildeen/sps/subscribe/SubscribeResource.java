@@ -2,11 +2,16 @@ package com.kildeen.sps.subscribe;
 
 import static java.lang.invoke.MethodHandles.lookup;
 
+import com.kildeen.sps.BasicSpsEvents;
 import com.kildeen.sps.IdWithReceipts;
 import com.kildeen.sps.SpsEvents;
 import com.kildeen.sps.inlet.Inlet;
+import com.kildeen.sps.json.BinaryCodec;
+import com.kildeen.sps.json.SmileCodec;
 import jakarta.inject.Inject;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
@@ -23,6 +28,9 @@ import org.eclipse.microprofile.openapi.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Set;
+import java.util.stream.Collectors;
+
 /**
  * JAX-RS resource for receiving subscription events.
  */
@@ -37,6 +45,12 @@ public class SubscribeResource {
     @Inject
     Inlet inlet;
 
+    @Inject
+    BinaryCodec codec;
+
+    @Inject
+    Validator validator;
+
     @POST
     @Path("/{type}")
     @Operation(summary = "Receive events", description = "Receive events of the specified type for subscription processing")
@@ -65,6 +79,36 @@ public class SubscribeResource {
         }
     }
 
+    /**
+     * The same events encoded as Smile, publishers offering it fall back to JSON when it is not consumed.
+     */
+    @POST
+    @Path("/{type}")
+    @Consumes(SmileCodec.CONTENT_TYPE)
+    @Operation(summary = "Receive events as Smile", description = "Binary alternative to the JSON body, same responses")
+    public Response receiveBinaryEvent(@PathParam("type") String type, byte[] body) {
+        SpsEvents events;
+        try {
+            events = codec.readValue(body, BasicSpsEvents.class).get();
+        } catch (Exception e) {
+            LOG.debug("Could not decode events of type {}", type, e);
+            return badRequest("Invalid event data: " + e.getMessage());
+        }
+        Set<ConstraintViolation<SpsEvents>> violations = validator.validate(events);
+        if (!violations.isEmpty()) {
+            return badRequest("Invalid event data: " + violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .collect(Collectors.joining(", ")));
+        }
+        return receiveEvent(type, events);
+    }
+
+    private static Response badRequest(String message) {
+        return Response.status(Response.Status.BAD_REQUEST)
+                .entity(new ErrorResponse(message))
+                .build();
+    }
+
     /**
      * Error response DTO
      */
@@ -89,6 +89,32 @@ class TransportFallbackE2ETest {
         assertThat(entries.get(0).subscriberId()).isEqualTo(SUBSCRIBER_ID);
     }
 
+    @Test
+    @DisplayName("Should queue every event of a batch with its own payload via DatabaseClient")
+    void shouldInsertBatchIntoTransportQueue() {
+        DatabaseClient databaseClient = new DatabaseClient(database);
+        var subscriber = new Subscriptions.Subscription.Subscriber(
+                SUBSCRIBER_ID,
+                "http://localhost:9999",
+                new PublishPolicy(List.of(DeliveryType.DATABASE))
+        );
+        var subscription = new Subscriptions.Subscription(subscriber, EVENT_TYPE, Map.of());
+        var spsEvents = new SpsEvents(EVENT_TYPE, List.of(
+                createEvent("batch-event-1", EVENT_TYPE, Map.of("n", 1)),
+                createEvent("batch-event-2", EVENT_TYPE, Map.of("n", 2)),
+                createEvent("batch-event-3", EVENT_TYPE, Map.of("n", 3))));
+
+        var result = databaseClient.post(subscription, spsEvents).join();
+
+        assertThat(result.allEvents()).isEqualTo(com.kildeen.sps.Receipt.ACK);
+        List<TransportQueueEntry> entries = database.pollTransportQueue(SUBSCRIBER_ID, 10);
+        assertThat(entries).extracting(TransportQueueEntry::eventId)
+                .containsExactly("batch-event-1", "batch-event-2", "batch-event-3");
+        assertThat(entries).allSatisfy(entry -> assertThat(entry.payload())
+                .contains(entry.eventId())
+                .doesNotContain(entry.eventId().equals("batch-event-1") ? "batch-event-2" : "batch-event-1"));
+    }
+
     @Test
     @DisplayName("Should deliver event via transport queue polling")
     void shouldDeliverEventViaPolling() {
@@ -0,0 +1,66 @@
+package com.kildeen.sps.inlet;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.IdWithReceipts;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchDedupTest {
+
+    private static final String TYPE = "batch_dedup_01";
+    private static final String SUB_ID = "batch_dedup_sub";
+
+    @Test
+    void redelivered_acked_batch_is_skipped_with_one_lookup() {
+        List<Set<String>> lookups = new CopyOnWriteArrayList<>();
+        EmbeddedDatabase database = new EmbeddedDatabase() {
+            @Override
+            public Set<String> ackedIds(Collection<String> ids) {
+                Set<String> acked = super.ackedIds(ids);
+                lookups.add(acked);
+                return acked;
+            }
+        };
+        List<String> received = new CopyOnWriteArrayList<>();
+        InletService inlet = InletService.newBuilder()
+                .withSubId(SUB_ID)
+                .withDatabase(database)
+                .withReceivers(List.of(new Receiver() {
+                    @Override
+                    public void receive(SpsEvent spsEvent) {
+                        received.add(spsEvent.id());
+                    }
+
+                    @Override
+                    public String eventType() {
+                        return TYPE;
+                    }
+                }))
+                .build();
+        SpsEvents events = new SpsEvents(TYPE, List.of(
+                new BasicSpsEvents.BasicSpsEvent(TYPE, "id1_" + SUB_ID, Map.of()),
+                new BasicSpsEvents.BasicSpsEvent(TYPE, "id2_" + SUB_ID, Map.of()),
+                new BasicSpsEvents.BasicSpsEvent(TYPE, "id3_" + SUB_ID, Map.of())));
+
+        inlet.receive(events);
+        IdWithReceipts redelivered = inlet.receive(events);
+
+        assertThat(received).containsExactly("id1_" + SUB_ID, "id2_" + SUB_ID, "id3_" + SUB_ID);
+        assertThat(lookups).hasSize(2);
+        assertThat(lookups.getFirst()).isEmpty();
+        assertThat(lookups.get(1)).containsExactlyInAnyOrder("id1_" + SUB_ID, "id2_" + SUB_ID, "id3_" + SUB_ID);
+        assertThat(redelivered.idWithReceipts()).extracting(IdWithReceipts.IdWithReceipt::receipt)
+                .containsOnly(Receipt.ACK);
+    }
+}
@@ -0,0 +1,110 @@
+package com.kildeen.sps.inlet;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.IdWithReceipts;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.TestInit;
+import com.kildeen.sps.json.JsonProvider;
+import com.kildeen.sps.persistence.TransportQueueEntry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class BatchReceiverTest {
+
+    private static final String BATCH_TYPE = "batch_receiver_01";
+    private static final String SINGLE_TYPE = "single_receiver_01";
+    private static final String SUB_ID = "batch_sub";
+
+    static {
+        TestInit.init();
+    }
+
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+    private final List<String> singles = new CopyOnWriteArrayList<>();
+
+    private final BatchReceiver batchReceiver = new BatchReceiver() {
+        @Override
+        public List<Receipt> receive(SpsEvents spsEvents) {
+            batches.add(spsEvents.spsEvents().stream().map(SpsEvent::id).toList());
+            List<Receipt> receipts = new ArrayList<>();
+            for (SpsEvent event : spsEvents.spsEvents()) {
+                receipts.add(event.data().containsKey("reject") ? Receipt.NACK : Receipt.ACK);
+            }
+            return receipts;
+        }
+
+        @Override
+        public String eventType() {
+            return BATCH_TYPE;
+        }
+    };
+
+    private final Receiver singleReceiver = new Receiver() {
+        @Override
+        public void receive(SpsEvent spsEvent) {
+            singles.add(spsEvent.id());
+        }
+
+        @Override
+        public String eventType() {
+            return SINGLE_TYPE;
+        }
+    };
+
+    @Test
+    void batch_receiver_gets_all_events_of_its_type_in_one_call() {
+        InletService inlet = InletService.newBuilder()
+                .withSubId(SUB_ID)
+                .withDatabase(new EmbeddedDatabase())
+                .withReceivers(List.of(batchReceiver, singleReceiver))
+                .build();
+
+        IdWithReceipts result = inlet.receive(new SpsEvents(BATCH_TYPE, List.of(
+                event(BATCH_TYPE, "b1", Map.of()),
+                event(SINGLE_TYPE, "s1", Map.of()),
+                event(BATCH_TYPE, "b2", Map.of("reject", true)),
+                event(BATCH_TYPE, "b3", Map.of()))));
+
+        assertThat(batches).containsExactly(List.of("b1_" + SUB_ID, "b2_" + SUB_ID, "b3_" + SUB_ID));
+        assertThat(singles).containsExactly("s1_" + SUB_ID);
+        assertThat(result.idWithReceipts()).extracting(IdWithReceipts.IdWithReceipt::receipt)
+                .containsExactly(Receipt.ACK, Receipt.ACK, Receipt.NACK, Receipt.ACK);
+    }
+
+    @Test
+    void transport_queue_poller_delivers_entries_to_the_batch_receiver_in_one_call() {
+        EmbeddedDatabase database = new EmbeddedDatabase();
+        for (String id : List.of("q1", "q2", "q3")) {
+            String eventId = id + "_" + SUB_ID;
+            Map<String, Object> data = id.equals("q2") ? Map.of("reject", true) : Map.of();
+            String payload = JsonProvider.json().write(
+                    new SpsEvents(BATCH_TYPE, List.of(new BasicSpsEvents.BasicSpsEvent(BATCH_TYPE, eventId, data))));
+            database.insertTransportEvent(eventId, BATCH_TYPE, SUB_ID, payload);
+        }
+
+        TransportQueuePoller poller = new TransportQueuePoller(database, SUB_ID, List.of(batchReceiver), 50, 100);
+        poller.start();
+        await().atMost(Duration.ofSeconds(5)).until(() -> !batches.isEmpty());
+        poller.stop();
+
+        assertThat(batches.get(0)).containsExactly("q1_" + SUB_ID, "q2_" + SUB_ID, "q3_" + SUB_ID);
+        assertThat(database.pollTransportQueue(SUB_ID, 10))
+                .extracting(TransportQueueEntry::eventId)
+                .containsExactly("q2_" + SUB_ID);
+    }
+
+    private static SpsEvent event(String type, String id, Map<String, Object> data) {
+        return new BasicSpsEvents.BasicSpsEvent(type, id + "_" + SUB_ID, data);
+    }
+}
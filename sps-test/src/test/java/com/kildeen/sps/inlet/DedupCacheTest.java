@@ -0,0 +1,140 @@
+package com.kildeen.sps.inlet;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.IdWithReceipts;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DedupCacheTest {
+
+    private static final Duration WINDOW = Duration.ofMinutes(1);
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void unseen_ids_are_new_and_acked_ids_are_answered_from_memory() {
+        DedupCache cache = new DedupCache(100, 1000, WINDOW, now::get);
+        now.addAndGet(WINDOW.toNanos());
+
+        assertThat(cache.lookup("id1_sub")).isEqualTo(DedupCache.Verdict.NEW);
+
+        cache.recordAcked("id1_sub");
+
+        assertThat(cache.lookup("id1_sub")).isEqualTo(DedupCache.Verdict.ACKED);
+        assertThat(cache.hits()).isEqualTo(2);
+        assertThat(cache.misses()).isZero();
+    }
+
+    @Test
+    void fresh_cache_never_answers_new_before_a_full_window() {
+        DedupCache cache = new DedupCache(100, 1000, WINDOW, now::get);
+
+        assertThat(cache.lookup("acked_before_restart_sub")).isEqualTo(DedupCache.Verdict.UNKNOWN);
+        now.addAndGet(WINDOW.toNanos() - 1);
+        assertThat(cache.lookup("acked_before_restart_sub")).isEqualTo(DedupCache.Verdict.UNKNOWN);
+        assertThat(cache.newHits()).isZero();
+
+        now.addAndGet(1);
+        assertThat(cache.lookup("acked_before_restart_sub")).isEqualTo(DedupCache.Verdict.NEW);
+    }
+
+    @Test
+    void restarted_inlet_does_not_redeliver_acked_events() {
+        EmbeddedDatabase database = new EmbeddedDatabase();
+        AtomicInteger received = new AtomicInteger();
+        SpsEvents events = new SpsEvents("dedup_cache_01", List.of(
+                new BasicSpsEvents.BasicSpsEvent("dedup_cache_01", "id1_dedup_cache_sub", Map.of())));
+        inlet(database, received).receive(events);
+
+        IdWithReceipts redelivered = inlet(database, received).receive(events);
+
+        assertThat(received).hasValue(1);
+        assertThat(redelivered.idWithReceipts()).extracting(IdWithReceipts.IdWithReceipt::receipt)
+                .containsOnly(Receipt.ACK);
+    }
+
+    @Test
+    void ids_evicted_from_recent_are_still_known_to_the_bloom_filter() {
+        DedupCache cache = new DedupCache(1, 1000, Duration.ofMinutes(1));
+        cache.recordAcked("id1_sub");
+        cache.recordAcked("id2_sub");
+
+        assertThat(cache.lookup("id1_sub")).isEqualTo(DedupCache.Verdict.UNKNOWN);
+        assertThat(cache.misses()).isEqualTo(1);
+    }
+
+    @Test
+    void ids_are_forgotten_after_two_windows() throws InterruptedException {
+        DedupCache cache = new DedupCache(1, 1000, Duration.ofMillis(10));
+        cache.recordAcked("id1_sub");
+        cache.recordAcked("id2_sub");
+
+        Thread.sleep(30);
+
+        assertThat(cache.lookup("id1_sub")).isEqualTo(DedupCache.Verdict.NEW);
+    }
+
+    @Test
+    void bloom_filter_keeps_false_positives_low() {
+        DedupCache cache = new DedupCache(1, 10_000, WINDOW, now::get);
+        now.addAndGet(WINDOW.toNanos());
+        for (int i = 0; i < 10_000; i++) {
+            cache.recordAcked("acked" + i + "_sub");
+        }
+        for (int i = 0; i < 10_000; i++) {
+            cache.lookup("new" + i + "_sub");
+        }
+
+        assertThat(cache.newHits()).isGreaterThan(9_700);
+    }
+
+    @Test
+    void inlet_answers_redeliveries_from_the_cache() {
+        AtomicInteger received = new AtomicInteger();
+        InletService inlet = inlet(new EmbeddedDatabase(), received);
+        SpsEvents events = new SpsEvents("dedup_cache_01", List.of(
+                new BasicSpsEvents.BasicSpsEvent("dedup_cache_01", "id1_dedup_cache_sub", Map.of()),
+                new BasicSpsEvents.BasicSpsEvent("dedup_cache_01", "id2_dedup_cache_sub", Map.of())));
+
+        inlet.receive(events);
+        IdWithReceipts redelivered = inlet.receive(events);
+
+        assertThat(received).hasValue(2);
+        assertThat(redelivered.idWithReceipts()).extracting(IdWithReceipts.IdWithReceipt::receipt)
+                .containsOnly(Receipt.ACK);
+        // The first delivery falls within the first window, the cache is not trusted yet
+        assertThat(inlet.getDedupCache().misses()).isEqualTo(2);
+        assertThat(inlet.getDedupCache().newHits()).isZero();
+        assertThat(inlet.getDedupCache().ackedHits()).isEqualTo(2);
+    }
+
+    private static InletService inlet(EmbeddedDatabase database, AtomicInteger received) {
+        return InletService.newBuilder()
+                .withSubId("dedup_cache_sub")
+                .withDatabase(database)
+                .withDedupCache(100, 1000, WINDOW)
+                .withReceivers(List.of(new Receiver() {
+                    @Override
+                    public void receive(SpsEvent spsEvent) {
+                        received.incrementAndGet();
+                    }
+
+                    @Override
+                    public String eventType() {
+                        return "dedup_cache_01";
+                    }
+                }))
+                .build();
+    }
+}
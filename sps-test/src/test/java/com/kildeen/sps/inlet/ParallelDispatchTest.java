@@ -0,0 +1,77 @@
+package com.kildeen.sps.inlet;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.IdWithReceipts;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelDispatchTest {
+
+    private static final String TYPE = "parallel_dispatch_01";
+
+    @Test
+    void partitions_run_concurrently_and_keep_their_order() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Map<Object, List<Integer>> seenByPartition = new ConcurrentHashMap<>();
+
+        InletService inlet = InletService.newBuilder()
+                .withSubId("parallel_sub")
+                .withDatabase(new EmbeddedDatabase())
+                .withParallelDispatch(e -> e.data().get("account"))
+                .withReceivers(List.of(new Receiver() {
+                    @Override
+                    public void receive(SpsEvent spsEvent) {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        seenByPartition.computeIfAbsent(spsEvent.data().get("account"),
+                                k -> new CopyOnWriteArrayList<>()).add((Integer) spsEvent.data().get("seq"));
+                        running.decrementAndGet();
+                        if ((Integer) spsEvent.data().get("seq") == 3) {
+                            throw new IllegalStateException("Simulated failure");
+                        }
+                    }
+
+                    @Override
+                    public String eventType() {
+                        return TYPE;
+                    }
+                }))
+                .build();
+
+        List<SpsEvent> events = new ArrayList<>();
+        for (int seq = 0; seq < 5; seq++) {
+            for (int account = 0; account < 4; account++) {
+                events.add(new BasicSpsEvents.BasicSpsEvent(TYPE, "id" + account + "-" + seq + "_parallel_sub",
+                        Map.of("account", "account" + account, "seq", seq)));
+            }
+        }
+
+        IdWithReceipts result = inlet.receive(new SpsEvents(TYPE, events));
+        inlet.stop();
+
+        assertThat(maxRunning.get()).isGreaterThan(1);
+        assertThat(seenByPartition).hasSize(4);
+        seenByPartition.values().forEach(seen -> assertThat(seen).containsExactly(0, 1, 2, 3, 4));
+        assertThat(result.idWithReceipts()).extracting(IdWithReceipts.IdWithReceipt::id)
+                .containsExactlyElementsOf(events.stream().map(SpsEvent::id).toList());
+        assertThat(result.idWithReceipts()).filteredOn(r -> r.receipt() == Receipt.NACK).hasSize(4);
+        assertThat(result.idWithReceipts()).filteredOn(r -> r.receipt() == Receipt.ACK).hasSize(16);
+    }
+}
@@ -0,0 +1,74 @@
+package com.kildeen.sps.inlet;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.TestInit;
+import com.kildeen.sps.json.JsonProvider;
+import com.kildeen.sps.persistence.TransportQueueEntry;
+import com.kildeen.sps.persistence.TransportQueueStats;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class TransportQueueBacklogTest {
+
+    private static final String TYPE = "transport_backlog_01";
+    private static final String SUB_ID = "backlog_sub";
+
+    static {
+        TestInit.init();
+    }
+
+    private final List<Integer> limits = new CopyOnWriteArrayList<>();
+    private final EmbeddedDatabase database = new EmbeddedDatabase() {
+        @Override
+        public List<TransportQueueEntry> claimTransportQueue(String subscriberId, int limit, Duration lease) {
+            limits.add(limit);
+            return super.claimTransportQueue(subscriberId, limit, lease);
+        }
+    };
+
+    @Test
+    void backlog_is_drained_in_growing_batches_and_reported_by_the_stats() throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            String eventId = "b" + i + "_" + SUB_ID;
+            database.insertTransportEvent(eventId, TYPE, SUB_ID, JsonProvider.json().write(
+                    new SpsEvents(TYPE, List.of(new BasicSpsEvents.BasicSpsEvent(TYPE, eventId, Map.of())))));
+        }
+        AtomicInteger received = new AtomicInteger();
+        TransportQueuePoller poller = new TransportQueuePoller(database, SUB_ID, List.of(new Receiver() {
+            @Override
+            public void receive(SpsEvent spsEvent) {
+                received.incrementAndGet();
+            }
+
+            @Override
+            public String eventType() {
+                return TYPE;
+            }
+        }), 60_000, 10, 160, 1, Duration.ofMinutes(1));
+        Thread.sleep(5);
+
+        TransportQueueStats backlog = poller.stats();
+        assertThat(backlog.depth()).isEqualTo(500);
+        assertThat(backlog.lag(Instant.now())).isPositive();
+
+        poller.start();
+        await().atMost(Duration.ofSeconds(5)).until(() -> received.get() == 500);
+        poller.stop();
+
+        assertThat(limits).startsWith(10, 20, 40, 80, 160, 160);
+        assertThat(poller.stats()).isEqualTo(TransportQueueStats.EMPTY);
+        assertThat(poller.currentBatchSize()).isLessThan(160);
+    }
+}
@@ -0,0 +1,119 @@
+package com.kildeen.sps.inlet;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.TestInit;
+import com.kildeen.sps.json.JsonProvider;
+import com.kildeen.sps.persistence.TransportQueueEntry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class TransportQueueClaimTest {
+
+    private static final String TYPE = "transport_claim_01";
+    private static final String SUB_ID = "claim_sub";
+
+    static {
+        TestInit.init();
+    }
+
+    private final EmbeddedDatabase database = new EmbeddedDatabase();
+
+    @Test
+    void claimed_entries_are_hidden_from_other_pollers_until_the_lease_expires() throws InterruptedException {
+        insert("c1", "c2", "c3");
+
+        List<TransportQueueEntry> first = database.claimTransportQueue(SUB_ID, 2, Duration.ofMillis(50));
+        List<TransportQueueEntry> second = database.claimTransportQueue(SUB_ID, 10, Duration.ofMinutes(1));
+
+        assertThat(first).extracting(TransportQueueEntry::eventId).containsExactly("c1_" + SUB_ID, "c2_" + SUB_ID);
+        assertThat(first).extracting(TransportQueueEntry::status).containsOnly(TransportQueueEntry.STATUS_CLAIMED);
+        assertThat(second).extracting(TransportQueueEntry::eventId).containsExactly("c3_" + SUB_ID);
+
+        Thread.sleep(60);
+
+        assertThat(database.claimTransportQueue(SUB_ID, 10, Duration.ofMinutes(1)))
+                .extracting(TransportQueueEntry::eventId).containsExactly("c1_" + SUB_ID, "c2_" + SUB_ID);
+    }
+
+    @Test
+    void released_entries_can_be_claimed_again_right_away() {
+        insert("r1");
+        List<TransportQueueEntry> claimed = database.claimTransportQueue(SUB_ID, 10, Duration.ofMinutes(1));
+
+        database.releaseTransportClaim(claimed.getFirst());
+
+        assertThat(database.claimTransportQueue(SUB_ID, 10, Duration.ofMinutes(1)))
+                .extracting(TransportQueueEntry::eventId).containsExactly("r1_" + SUB_ID);
+    }
+
+    @Test
+    void expired_claim_cannot_release_or_process_an_entry_claimed_again() throws InterruptedException {
+        insert("s1");
+        List<TransportQueueEntry> stale = database.claimTransportQueue(SUB_ID, 10, Duration.ofMillis(20));
+        Thread.sleep(30);
+        List<TransportQueueEntry> current = database.claimTransportQueue(SUB_ID, 10, Duration.ofMinutes(1));
+
+        database.releaseTransportClaim(stale.getFirst());
+        database.markTransportProcessed(stale);
+
+        assertThat(current).extracting(TransportQueueEntry::claimId).doesNotContain(stale.getFirst().claimId());
+        assertThat(database.transportQueueStats(SUB_ID).depth()).isOne();
+        assertThat(database.claimTransportQueue(SUB_ID, 10, Duration.ofMinutes(1))).isEmpty();
+
+        database.markTransportProcessed(current);
+
+        assertThat(database.transportQueueStats(SUB_ID).depth()).isZero();
+    }
+
+    @Test
+    void concurrent_consumers_deliver_each_entry_once() {
+        for (int i = 0; i < 200; i++) {
+            insert("p" + i);
+        }
+        Map<String, AtomicInteger> deliveries = new ConcurrentHashMap<>();
+        Receiver receiver = new Receiver() {
+            @Override
+            public void receive(SpsEvent spsEvent) {
+                deliveries.computeIfAbsent(spsEvent.id(), id -> new AtomicInteger()).incrementAndGet();
+            }
+
+            @Override
+            public String eventType() {
+                return TYPE;
+            }
+        };
+
+        TransportQueuePoller first = new TransportQueuePoller(database, SUB_ID, List.of(receiver),
+                10, 20, 4, Duration.ofMinutes(1));
+        TransportQueuePoller second = new TransportQueuePoller(database, SUB_ID, List.of(receiver),
+                10, 20, 4, Duration.ofMinutes(1));
+        first.start();
+        second.start();
+        await().atMost(Duration.ofSeconds(10)).until(() -> deliveries.size() == 200);
+        first.stop();
+        second.stop();
+
+        assertThat(deliveries.values()).allMatch(count -> count.get() == 1);
+        assertThat(database.pollTransportQueue(SUB_ID, 10)).isEmpty();
+    }
+
+    private void insert(String... ids) {
+        for (String id : ids) {
+            String eventId = id + "_" + SUB_ID;
+            String payload = JsonProvider.json().write(
+                    new SpsEvents(TYPE, List.of(new BasicSpsEvents.BasicSpsEvent(TYPE, eventId, Map.of()))));
+            database.insertTransportEvent(eventId, TYPE, SUB_ID, payload);
+        }
+    }
+}
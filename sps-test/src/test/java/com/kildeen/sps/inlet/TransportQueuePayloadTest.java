@@ -0,0 +1,69 @@
+package com.kildeen.sps.inlet;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.TestInit;
+import com.kildeen.sps.json.JsonProvider;
+import com.kildeen.sps.persistence.TransportQueueEntry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class TransportQueuePayloadTest {
+
+    private static final String TYPE = "transport_payload_01";
+    private static final String SUB_ID = "payload_sub";
+
+    static {
+        TestInit.init();
+    }
+
+    private final List<Integer> marked = new CopyOnWriteArrayList<>();
+    private final EmbeddedDatabase database = new EmbeddedDatabase() {
+        @Override
+        public void markTransportProcessed(List<TransportQueueEntry> entries) {
+            marked.add(entries.size());
+            super.markTransportProcessed(entries);
+        }
+    };
+
+    @Test
+    void entries_sharing_a_batch_payload_are_delivered_and_marked_together() {
+        List<BasicSpsEvents.BasicSpsEvent> events = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            events.add(new BasicSpsEvents.BasicSpsEvent(TYPE, "s" + i + "_" + SUB_ID, Map.of("seq", i)));
+        }
+        // Payload layout of rows queued before each event got its own payload
+        String shared = JsonProvider.json().write(new SpsEvents(TYPE, new ArrayList<>(events)));
+        events.forEach(event -> database.insertTransportEvent(event.id(), TYPE, SUB_ID, shared));
+
+        List<Object> received = new CopyOnWriteArrayList<>();
+        TransportQueuePoller poller = new TransportQueuePoller(database, SUB_ID, List.of(new Receiver() {
+            @Override
+            public void receive(SpsEvent spsEvent) {
+                received.add(spsEvent.data().get("seq"));
+            }
+
+            @Override
+            public String eventType() {
+                return TYPE;
+            }
+        }), 60_000, 100);
+        poller.start();
+        await().atMost(Duration.ofSeconds(5)).until(() -> received.size() == 50);
+        poller.stop();
+
+        assertThat(received).hasSize(50).doesNotHaveDuplicates();
+        assertThat(marked).containsExactly(50);
+        assertThat(database.pollTransportQueue(SUB_ID, 100)).isEmpty();
+    }
+}
@@ -0,0 +1,84 @@
+package com.kildeen.sps.inlet;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.TestInit;
+import com.kildeen.sps.json.JsonProvider;
+import com.kildeen.sps.persistence.ListenerRegistration;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class TransportQueueWakeupTest {
+
+    private static final String TYPE = "transport_wakeup_01";
+    private static final String SUB_ID = "wakeup_sub";
+
+    static {
+        TestInit.init();
+    }
+
+    @Test
+    void queued_entries_are_delivered_without_waiting_for_the_poll_interval() throws InterruptedException {
+        EmbeddedDatabase database = new EmbeddedDatabase();
+        List<String> received = new CopyOnWriteArrayList<>();
+        Receiver receiver = new Receiver() {
+            @Override
+            public void receive(SpsEvent spsEvent) {
+                received.add(spsEvent.id());
+            }
+
+            @Override
+            public String eventType() {
+                return TYPE;
+            }
+        };
+        TransportQueuePoller poller = new TransportQueuePoller(database, SUB_ID, List.of(receiver),
+                60_000, 100);
+        poller.start();
+        // Let the first poll find the queue empty and wait
+        Thread.sleep(100);
+
+        String eventId = "w1_" + SUB_ID;
+        database.insertTransportEvent(eventId, TYPE, SUB_ID, JsonProvider.json().write(
+                new SpsEvents(TYPE, List.of(new BasicSpsEvents.BasicSpsEvent(TYPE, eventId, Map.of())))));
+
+        await().atMost(Duration.ofSeconds(2)).until(() -> !received.isEmpty());
+        poller.stop();
+
+        assertThat(received).containsExactly(eventId);
+    }
+
+    @Test
+    void stopped_poller_is_no_longer_notified() {
+        AtomicInteger notified = new AtomicInteger();
+        EmbeddedDatabase database = new EmbeddedDatabase() {
+            @Override
+            public Optional<ListenerRegistration> onTransportQueued(String subscriberId, Runnable listener) {
+                return super.onTransportQueued(subscriberId, () -> {
+                    notified.incrementAndGet();
+                    listener.run();
+                });
+            }
+        };
+        TransportQueuePoller poller = new TransportQueuePoller(database, SUB_ID, List.of(), 60_000, 100);
+        poller.start();
+        database.insertTransportEvent("n1_" + SUB_ID, TYPE, SUB_ID, "{}");
+        assertThat(notified).hasValue(1);
+
+        poller.stop();
+        database.insertTransportEvent("n2_" + SUB_ID, TYPE, SUB_ID, "{}");
+
+        assertThat(notified).hasValue(1);
+    }
+}
@@ -0,0 +1,83 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.IdWithReceiptsResult;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.TestInit;
+import com.kildeen.sps.json.JsonProvider;
+import com.kildeen.sps.json.SmileCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BinaryCodecTest {
+
+    private static final String TYPE = "binary_codec_01";
+
+    static {
+        TestInit.init();
+    }
+
+    private final SmileCodec codec = new SmileCodec();
+    private TestReceiver receiver;
+
+    @AfterEach
+    void stop() {
+        receiver.close();
+    }
+
+    @Test
+    void receiver_consuming_the_codec_gets_it() throws IOException {
+        receiver = TestReceiver.start(request -> TestReceiver.Response.NO_CONTENT);
+        SpsEvents events = events(200);
+
+        IdWithReceiptsResult result = receiver.post(client(), events);
+
+        assertThat(result.allEvents()).isEqualTo(Receipt.ACK);
+        assertThat(receiver.requests()).extracting(TestReceiver.Request::contentType)
+                .containsExactly(SmileCodec.CONTENT_TYPE);
+        byte[] body = receiver.requests().getFirst().body();
+        BasicSpsEvents received = codec.readValue(body, BasicSpsEvents.class);
+        assertThat(received).isEqualTo(JsonProvider.json().readValue(JsonProvider.json().write(events),
+                BasicSpsEvents.class));
+        assertThat(body.length).isLessThan(JsonProvider.json().writeValueAsBytes(events).length / 2);
+    }
+
+    @Test
+    void receiver_not_consuming_the_codec_is_sent_json() throws IOException {
+        receiver = TestReceiver.start(request -> request.contentType().equals(SmileCodec.CONTENT_TYPE)
+                ? TestReceiver.Response.unsupported(null)
+                : TestReceiver.Response.NO_CONTENT);
+        HttpClient client = client();
+
+        assertThat(receiver.post(client, events(3)).allEvents()).isEqualTo(Receipt.ACK);
+        assertThat(receiver.post(client, events(3)).allEvents()).isEqualTo(Receipt.ACK);
+
+        assertThat(receiver.requests()).extracting(TestReceiver.Request::contentType)
+                .containsExactly(SmileCodec.CONTENT_TYPE, "application/json", "application/json");
+        assertThat(JsonProvider.json().readValue(new String(receiver.requests().get(1).body()),
+                BasicSpsEvents.class).spsEvents()).hasSize(3);
+    }
+
+    private HttpClient client() {
+        return new HttpClient(Executors.newVirtualThreadPerTaskExecutor(), codec);
+    }
+
+    private static SpsEvents events(int count) {
+        List<SpsEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(new BasicSpsEvents.BasicSpsEvent(TYPE, "b" + i,
+                    Map.of("status", "SHIPPED", "currency", "EUR", "amount", i * 10, "customer", "c" + i % 5)));
+        }
+        return new SpsEvents(TYPE, events);
+    }
+}
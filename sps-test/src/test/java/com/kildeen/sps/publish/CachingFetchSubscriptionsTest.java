@@ -0,0 +1,207 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.AllEventsResult;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.Client;
+import com.kildeen.sps.IdWithReceiptsResult;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.TestInit;
+import com.kildeen.sps.persistence.ListenerRegistration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingFetchSubscriptionsTest {
+
+    static {
+        TestInit.init();
+    }
+
+    private EmbeddedDatabase database;
+    private AtomicInteger loads;
+    private FetchSubscriptions counting;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabase();
+        loads = new AtomicInteger();
+        FetchSubscriptionsImpl impl = new FetchSubscriptionsImpl(database);
+        counting = new FetchSubscriptions() {
+            @Override
+            public Subscriptions fetchSubscriptions(Set<String> eventTypes) {
+                loads.incrementAndGet();
+                return impl.fetchSubscriptions(eventTypes);
+            }
+
+            @Override
+            public String fetchSubscriptions() {
+                return impl.fetchSubscriptions();
+            }
+        };
+        database.addSubscription(subscription("sub1", "type_a"));
+        database.addSubscription(subscription("sub2", "type_b"));
+    }
+
+    @Test
+    void repeated_fetches_are_served_from_the_cache() {
+        CachingFetchSubscriptions cache = CachingFetchSubscriptions.create(counting, database, Duration.ofMinutes(1), 16);
+
+        assertThat(cache.fetchSubscriptions(Set.of("type_a", "type_b")).subscriptions()).hasSize(2);
+        assertThat(cache.fetchSubscriptions(Set.of("type_a")).subscriptions()).hasSize(1);
+        assertThat(cache.fetchSubscriptions(Set.of("type_b")).subscriptions()).hasSize(1);
+
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void event_types_without_subscriptions_are_cached() {
+        CachingFetchSubscriptions cache = CachingFetchSubscriptions.create(counting, database, Duration.ofMinutes(1), 16);
+
+        assertThat(cache.fetchSubscriptions(Set.of("unknown")).isEmpty()).isTrue();
+        assertThat(cache.fetchSubscriptions(Set.of("unknown")).isEmpty()).isTrue();
+
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void polled_version_change_invalidates_the_cache() {
+        CachingFetchSubscriptions cache = CachingFetchSubscriptions.create(counting, database, Duration.ofMinutes(1), 16);
+        cache.fetchSubscriptions(Set.of("type_a"));
+
+        database.addSubscription(subscription("sub3", "type_a"));
+
+        assertThat(cache.fetchSubscriptions(Set.of("type_a")).subscriptions()).hasSize(2);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void pushed_change_invalidates_only_that_event_type() {
+        AtomicReference<Consumer<String>> listener = new AtomicReference<>();
+        EmbeddedDatabase pushing = pushing(listener);
+        pushing.addSubscription(subscription("sub1", "type_a"));
+        pushing.addSubscription(subscription("sub2", "type_b"));
+        CachingFetchSubscriptions cache = CachingFetchSubscriptions.create(
+                new FetchSubscriptionsImpl(pushing), pushing, Duration.ofMinutes(1), 16);
+        cache.fetchSubscriptions(Set.of("type_a", "type_b"));
+
+        pushing.addSubscription(subscription("sub3", "type_a"));
+        pushing.addSubscription(subscription("sub4", "type_b"));
+        listener.get().accept("type_a");
+
+        assertThat(cache.fetchSubscriptions(Set.of("type_a")).subscriptions()).hasSize(2);
+        assertThat(cache.fetchSubscriptions(Set.of("type_b")).subscriptions()).hasSize(1);
+
+        listener.get().accept(null);
+
+        assertThat(cache.fetchSubscriptions(Set.of("type_b")).subscriptions()).hasSize(2);
+    }
+
+    @Test
+    void expired_entries_are_reloaded() throws InterruptedException {
+        CachingFetchSubscriptions cache = CachingFetchSubscriptions.create(counting, database, Duration.ofMillis(1), 16);
+        cache.fetchSubscriptions(Set.of("type_a"));
+
+        Thread.sleep(5);
+        cache.fetchSubscriptions(Set.of("type_a"));
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void least_recently_used_event_type_is_evicted() {
+        CachingFetchSubscriptions cache = CachingFetchSubscriptions.create(counting, database, Duration.ofMinutes(1), 2);
+        cache.fetchSubscriptions(Set.of("type_a"));
+        cache.fetchSubscriptions(Set.of("type_b"));
+        cache.fetchSubscriptions(Set.of("type_a"));
+        cache.fetchSubscriptions(Set.of("type_c"));
+        assertThat(loads).hasValue(3);
+
+        cache.fetchSubscriptions(Set.of("type_a"));
+        assertThat(loads).hasValue(3);
+
+        cache.fetchSubscriptions(Set.of("type_b"));
+        assertThat(loads).hasValue(4);
+    }
+
+    @Test
+    void closed_cache_removes_its_listener() {
+        AtomicReference<Consumer<String>> listener = new AtomicReference<>();
+        EmbeddedDatabase pushing = pushing(listener);
+        CachingFetchSubscriptions cache = CachingFetchSubscriptions.create(
+                new FetchSubscriptionsImpl(pushing), pushing, Duration.ofMinutes(1), 16);
+
+        cache.close();
+
+        assertThat(listener.get()).isNull();
+    }
+
+    @Test
+    void cache_is_off_by_default_when_the_database_cannot_signal_changes() {
+        EmbeddedDatabase silent = new EmbeddedDatabase() {
+            @Override
+            public Subscriptions subscriptions(Set<String> eventTypes) {
+                loads.incrementAndGet();
+                return super.subscriptions(eventTypes);
+            }
+
+            @Override
+            public long subscriptionsVersion() {
+                return -1;
+            }
+        };
+        silent.addSubscription(subscription("sub1", "type_a"));
+        Publish publish = PublishService.newBuilder()
+                .withDatabase(silent)
+                .withClient(new Client() {
+                    @Override
+                    public CompletableFuture<IdWithReceiptsResult> post(Subscriptions.Subscription subscription,
+                                                                       SpsEvents spsEvents) {
+                        return CompletableFuture.completedFuture(AllEventsResult.ACK);
+                    }
+
+                    @Override
+                    public EnumSet<DeliveryType> supports() {
+                        return EnumSet.of(DeliveryType.HTTP);
+                    }
+                })
+                .build();
+
+        publish.publish(List.of(new BasicSpsEvents.BasicSpsEvent("type_a", "d1", Map.of())));
+        publish.publish(List.of(new BasicSpsEvents.BasicSpsEvent("type_a", "d2", Map.of())));
+
+        assertThat(loads).hasValue(2);
+    }
+
+    private static EmbeddedDatabase pushing(AtomicReference<Consumer<String>> listener) {
+        return new EmbeddedDatabase() {
+            @Override
+            public boolean pushesSubscriptionChanges() {
+                return true;
+            }
+
+            @Override
+            public Optional<ListenerRegistration> onSubscriptionsChanged(Consumer<String> changed) {
+                listener.set(changed);
+                return Optional.of(() -> listener.compareAndSet(changed, null));
+            }
+        };
+    }
+
+    private static Subscriptions.Subscription subscription(String subId, String eventType) {
+        return new Subscriptions.Subscription(
+                new Subscriptions.Subscription.Subscriber(subId, "http://" + subId), eventType, Map.of());
+    }
+}
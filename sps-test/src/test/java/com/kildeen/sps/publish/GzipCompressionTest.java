@@ -0,0 +1,146 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.ConfigurationException;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.TestInit;
+import com.kildeen.sps.json.JsonProvider;
+import com.kildeen.sps.json.SmileCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class GzipCompressionTest {
+
+    private static final String TYPE = "gzip_compression_01";
+    private static final String JSON = "application/json";
+
+    static {
+        TestInit.init();
+    }
+
+    private TestReceiver receiver;
+
+    @AfterEach
+    void stop() {
+        if (receiver != null) {
+            receiver.close();
+        }
+    }
+
+    @Test
+    void bodies_from_the_threshold_are_gzipped() throws IOException {
+        receiver = TestReceiver.start(request -> TestReceiver.Response.NO_CONTENT);
+        HttpClient client = client(null, new GzipCompression(4096, 6));
+        SpsEvents large = events(500);
+
+        assertThat(receiver.post(client, large).allEvents()).isEqualTo(Receipt.ACK);
+        assertThat(receiver.post(client, events(2)).allEvents()).isEqualTo(Receipt.ACK);
+
+        assertThat(receiver.requests()).extracting(TestReceiver.Request::encoding)
+                .containsExactly("gzip", "identity");
+        byte[] json = JsonProvider.json().writeValueAsBytes(large);
+        byte[] gzipped = receiver.requests().getFirst().body();
+        assertThat(gunzip(gzipped)).isEqualTo(json);
+        assertThat(gzipped.length).isLessThan(json.length / 4);
+        assertThat(new String(receiver.requests().get(1).body(), StandardCharsets.UTF_8)).startsWith("{");
+    }
+
+    @Test
+    void receiver_rejecting_gzip_is_sent_uncompressed_bodies() throws IOException {
+        receiver = TestReceiver.start(request -> request.gzipped()
+                ? TestReceiver.Response.unsupported("identity")
+                : TestReceiver.Response.NO_CONTENT);
+        HttpClient client = client(null, new GzipCompression(0, 1));
+
+        assertThat(receiver.post(client, events(3)).allEvents()).isEqualTo(Receipt.ACK);
+        assertThat(receiver.post(client, events(3)).allEvents()).isEqualTo(Receipt.ACK);
+
+        assertThat(receiver.requests()).extracting(TestReceiver.Request::encoding)
+                .containsExactly("gzip", "identity", "identity");
+    }
+
+    @Test
+    void binary_and_gzip_rejected_without_accepted_codings_drop_the_codec_first() throws IOException {
+        // Without Accept-Encoding the client cannot tell which one was rejected
+        receiver = TestReceiver.start(request -> request.contentType().equals(JSON) && !request.gzipped()
+                ? TestReceiver.Response.NO_CONTENT
+                : TestReceiver.Response.unsupported(null));
+        HttpClient client = client(new SmileCodec(), new GzipCompression(0, 1));
+
+        assertThat(receiver.post(client, events(3)).allEvents()).isEqualTo(Receipt.ACK);
+        assertThat(receiver.post(client, events(3)).allEvents()).isEqualTo(Receipt.ACK);
+
+        assertThat(receiver.requests())
+                .extracting(TestReceiver.Request::contentType, TestReceiver.Request::encoding)
+                .containsExactly(
+                        tuple(SmileCodec.CONTENT_TYPE, "gzip"),
+                        tuple(JSON, "gzip"),
+                        tuple(JSON, "identity"),
+                        tuple(JSON, "identity"));
+    }
+
+    @Test
+    void binary_and_gzip_rejected_naming_identity_keep_the_codec() throws IOException {
+        receiver = TestReceiver.start(request -> request.gzipped()
+                ? TestReceiver.Response.unsupported("identity")
+                : TestReceiver.Response.NO_CONTENT);
+        HttpClient client = client(new SmileCodec(), new GzipCompression(0, 1));
+
+        assertThat(receiver.post(client, events(3)).allEvents()).isEqualTo(Receipt.ACK);
+        assertThat(receiver.post(client, events(3)).allEvents()).isEqualTo(Receipt.ACK);
+
+        assertThat(receiver.requests())
+                .extracting(TestReceiver.Request::contentType, TestReceiver.Request::encoding)
+                .containsExactly(
+                        tuple(SmileCodec.CONTENT_TYPE, "gzip"),
+                        tuple(SmileCodec.CONTENT_TYPE, "identity"),
+                        tuple(SmileCodec.CONTENT_TYPE, "identity"));
+    }
+
+    @Test
+    void level_outside_deflate_range_is_rejected() {
+        assertThatThrownBy(() -> PublishService.newBuilder()
+                .withDatabase(new EmbeddedDatabase())
+                .withGzip(1024, 10)
+                .build())
+                .isInstanceOf(ConfigurationException.class);
+    }
+
+    private static HttpClient client(SmileCodec codec, GzipCompression compression) {
+        return new HttpClient(Executors.newVirtualThreadPerTaskExecutor(), codec, compression);
+    }
+
+    private static SpsEvents events(int count) {
+        List<SpsEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(new BasicSpsEvents.BasicSpsEvent(TYPE, "g" + i,
+                    Map.of("status", "SHIPPED", "currency", "EUR", "amount", i * 10)));
+        }
+        return new SpsEvents(TYPE, events);
+    }
+
+    private static byte[] gunzip(byte[] body) {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.IdWithReceiptsResult;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.TestInit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpReceiptsTest {
+
+    private static final String TYPE = "http_receipts_01";
+
+    static {
+        TestInit.init();
+    }
+
+    private TestReceiver receiver;
+
+    @AfterEach
+    void stop() {
+        receiver.close();
+    }
+
+    @Test
+    void receipts_are_looked_up_by_event_id() throws IOException {
+        List<SpsEvent> events = new ArrayList<>();
+        StringJoiner receipts = new StringJoiner(",", "{\"idWithReceipts\":[", "]}");
+        for (int i = 0; i < 1000; i++) {
+            events.add(new BasicSpsEvents.BasicSpsEvent(TYPE, "r" + i, Map.of()));
+            // Written by hand, the default mapper has no support for the instant
+            receipts.add("{\"id\":\"r" + i + "\",\"type\":\"" + TYPE + "\",\"receipt\":\""
+                    + (i % 3 == 0 ? Receipt.NACK : Receipt.ACK) + "\"}");
+        }
+        respond(TestReceiver.Response.status(200, receipts.toString()));
+
+        IdWithReceiptsResult result = post(events);
+
+        assertThat(result.allEvents()).isEqualTo(Receipt.UNKNOWN);
+        assertThat(result.idWithReceipts()).hasSize(1000);
+        assertThat(result.receipt("r0")).isEqualTo(Receipt.NACK);
+        assertThat(result.receipt("r1")).isEqualTo(Receipt.ACK);
+        assertThat(result.receipt("r999")).isEqualTo(Receipt.NACK);
+        assertThat(result.receipt("missing")).isNull();
+    }
+
+    @Test
+    void no_content_acks_every_event() throws IOException {
+        respond(TestReceiver.Response.NO_CONTENT);
+
+        IdWithReceiptsResult result = post(List.of(new BasicSpsEvents.BasicSpsEvent(TYPE, "a1", Map.of())));
+
+        assertThat(result.allEvents()).isEqualTo(Receipt.ACK);
+        assertThat(result.receipt("a1")).isEqualTo(Receipt.ACK);
+    }
+
+    @Test
+    void error_status_nacks_every_event() throws IOException {
+        respond(TestReceiver.Response.status(500, "{\"error\":\"boom\"}"));
+
+        IdWithReceiptsResult result = post(List.of(new BasicSpsEvents.BasicSpsEvent(TYPE, "n1", Map.of())));
+
+        assertThat(result.allEvents()).isEqualTo(Receipt.NACK);
+        assertThat(result.receipt("n1")).isEqualTo(Receipt.NACK);
+    }
+
+    private void respond(TestReceiver.Response response) throws IOException {
+        receiver = TestReceiver.start(request -> response);
+    }
+
+    private IdWithReceiptsResult post(List<SpsEvent> events) {
+        return receiver.post(new HttpClient(), new SpsEvents(TYPE, events));
+    }
+}
@@ -0,0 +1,158 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.json.JacksonJson;
+import com.kildeen.sps.json.Json;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonBodyTest {
+
+    private static final String TYPE = "json_body_01";
+
+    private final AtomicInteger dataWrites = new AtomicInteger();
+    private final Json json = new Json() {
+        private final Json jackson = new JacksonJson();
+
+        @Override
+        public <T> T readValue(String value, Class<T> clazz) {
+            return jackson.readValue(value, clazz);
+        }
+
+        @Override
+        public byte[] writeValueAsBytes(Object object) {
+            if (object instanceof Map<?, ?>) {
+                dataWrites.incrementAndGet();
+            }
+            return jackson.writeValueAsBytes(object);
+        }
+
+        @Override
+        public String write(Object object) {
+            return jackson.write(object);
+        }
+    };
+
+    @Test
+    void body_is_the_same_json_as_writing_the_events() {
+        List<PublishableEvent> forks = fork(Map.of(), Map.of("name", "renamed"));
+
+        for (PublishableEvent fork : forks) {
+            SpsEvents spsEvents = new SpsEvents(TYPE, fork.forkedEvents());
+            BasicSpsEvents expected = json.readValue(json.write(spsEvents), BasicSpsEvents.class);
+
+            assertThat(json.readValue(read(body(spsEvents)), BasicSpsEvents.class))
+                    .isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void data_of_schema_less_forks_is_serialized_once() {
+        List<PublishableEvent> forks = fork(Map.of(), Map.of(), Map.of());
+
+        List<String> bodies = new ArrayList<>();
+        for (PublishableEvent fork : forks) {
+            bodies.add(read(body(new SpsEvents(TYPE, fork.forkedEvents()))));
+        }
+
+        assertThat(dataWrites).hasValue(2);
+        assertThat(bodies.get(0)).contains("big_firstsub").doesNotContain("secondsub");
+        assertThat(bodies.get(2)).contains("big_thirdsub");
+    }
+
+    @Test
+    void data_written_by_another_json_is_not_reused() {
+        SpsEvents spsEvents = new SpsEvents(TYPE, fork(Map.of()).getFirst().forkedEvents());
+        Json jackson = new JacksonJson();
+        Json other = new Json() {
+            @Override
+            public <T> T readValue(String value, Class<T> clazz) {
+                return jackson.readValue(value, clazz);
+            }
+
+            @Override
+            public byte[] writeValueAsBytes(Object object) {
+                return jackson.writeValueAsBytes(object instanceof Map<?, ?> ? Map.of("written", "by-other") : object);
+            }
+
+            @Override
+            public String write(Object object) {
+                return jackson.write(object);
+            }
+        };
+
+        String first = read(body(spsEvents));
+        String second = read(JsonBody.publisher(JsonBody.json(spsEvents, other)));
+
+        assertThat(first).doesNotContain("by-other");
+        assertThat(second).contains("by-other");
+    }
+
+    @Test
+    void content_length_matches_the_bytes_sent() {
+        HttpRequest.BodyPublisher body = body(new SpsEvents(TYPE, fork(Map.of()).getFirst().forkedEvents()));
+
+        assertThat(body.contentLength()).isEqualTo(read(body).getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private HttpRequest.BodyPublisher body(SpsEvents spsEvents) {
+        return JsonBody.publisher(JsonBody.json(spsEvents, json));
+    }
+
+    private List<PublishableEvent> fork(Map<?, ?>... subSchemas) {
+        String big = "x".repeat(40_000);
+        List<SpsEvent> events = List.of(
+                new BasicSpsEvents.BasicSpsEvent(TYPE, "big", Map.of("name", big, "n", 1)),
+                new BasicSpsEvents.BasicSpsEvent(TYPE, "small", Map.of("name", "\"quoted\" ü")));
+        List<String> subIds = List.of("firstsub", "secondsub", "thirdsub");
+        List<Subscriptions.Subscription> subscriptions = new ArrayList<>();
+        for (int i = 0; i < subSchemas.length; i++) {
+            @SuppressWarnings("unchecked")
+            Map<String, String> subSchema = (Map<String, String>) subSchemas[i];
+            subscriptions.add(new Subscriptions.Subscription(
+                    new Subscriptions.Subscription.Subscriber(subIds.get(i), "http://" + subIds.get(i)), TYPE,
+                    subSchema));
+        }
+        return new EventFork(events, subscriptions).fork().forks();
+    }
+
+    private static String read(HttpRequest.BodyPublisher body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        body.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                byte[] chunk = new byte[item.remaining()];
+                item.get(chunk);
+                bytes.writeBytes(chunk);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throw new AssertionError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,244 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.Client;
+import com.kildeen.sps.IdWithReceipts;
+import com.kildeen.sps.IdWithReceiptsResult;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.TestInit;
+import com.kildeen.sps.json.JsonProvider;
+import com.kildeen.sps.persistence.PendingRetry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class PersistentRetryTest {
+
+    private static final String TYPE = "persistent_retry_01";
+    private static final String SUB_ID = "persistent_sub";
+
+    static {
+        TestInit.init();
+    }
+
+    private final EmbeddedDatabase database = new EmbeddedDatabase();
+    private final Subscriptions.Subscription subscription = new Subscriptions.Subscription(
+            new Subscriptions.Subscription.Subscriber(SUB_ID, "http://persistent"), TYPE, Map.of());
+
+    @Test
+    void retry_left_by_a_stopped_publisher_is_sent_by_the_next_one() {
+        database.addSubscription(subscription);
+        RecordingClient nacking = new RecordingClient(Receipt.NACK);
+        Publisher first = publisher(nacking, 300);
+        first.publish(new Subscriptions(List.of(subscription)), List.of(
+                new BasicSpsEvents.BasicSpsEvent(TYPE, "p1", Map.of("n", 1))));
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> database.pendingRetries().size() == 1);
+        first.close();
+
+        RecordingClient acking = new RecordingClient(Receipt.ACK);
+        Publisher second = publisher(acking, 300);
+        await().atMost(Duration.ofSeconds(5)).until(() -> database.pendingRetries().isEmpty());
+        second.close();
+
+        assertThat(nacking.received).containsExactly("p1_" + SUB_ID);
+        assertThat(acking.received).containsExactly("p1_" + SUB_ID);
+    }
+
+    @Test
+    void failed_persisted_retry_is_saved_again_instead_of_completed() {
+        database.addSubscription(subscription);
+        database.saveRetry(pending(SUB_ID, "f1", 0));
+        RecordingClient nacking = new RecordingClient(Receipt.NACK);
+
+        Publisher publisher = publisher(nacking, 60_000);
+        await().atMost(Duration.ofSeconds(5)).until(() -> !nacking.received.isEmpty());
+        await().atMost(Duration.ofSeconds(5)).until(() -> database.pendingRetries().stream()
+                .anyMatch(retry -> retry.claimId() == null));
+        publisher.close();
+
+        assertThat(database.pendingRetries()).singleElement().satisfies(retry -> {
+            assertThat(retry.eventId()).isEqualTo("f1");
+            assertThat(retry.retries()).isEqualTo(1);
+            assertThat(retry.dueAt()).isAfter(Instant.now().plusSeconds(30));
+        });
+    }
+
+    @Test
+    void retry_for_a_removed_subscription_is_dropped() {
+        database.saveRetry(pending("gone_sub", "g1", 1));
+        RecordingClient acking = new RecordingClient(Receipt.ACK);
+
+        Publisher publisher = publisher(acking, 300);
+        await().atMost(Duration.ofSeconds(5)).until(() -> database.pendingRetries().isEmpty());
+        publisher.close();
+
+        assertThat(acking.received).isEmpty();
+    }
+
+    @Test
+    void retries_of_different_events_starting_with_the_same_one_are_kept_apart() {
+        database.addSubscription(subscription);
+        Subscriptions subscriptions = new Subscriptions(List.of(subscription));
+        Publisher publisher = publisher(new RecordingClient(Receipt.NACK), 60_000);
+
+        publisher.publish(subscriptions, List.of(event("k1"), event("k2")));
+        await().atMost(Duration.ofSeconds(5)).until(() -> database.pendingRetries().size() == 1);
+        publisher.publish(subscriptions, List.of(event("k1"), event("k3")));
+        await().atMost(Duration.ofSeconds(5)).until(() -> database.pendingRetries().size() == 2);
+        publisher.close();
+
+        assertThat(database.pendingRetries()).extracting(PendingRetry::eventId).doesNotHaveDuplicates()
+                .allMatch(id -> id.startsWith("k1_" + SUB_ID + "_"));
+    }
+
+    @Test
+    void events_already_waiting_for_a_retry_in_memory_complete_as_unknown() {
+        EmbeddedDatabase storesNoRetries = new EmbeddedDatabase() {
+            @Override
+            public boolean storesRetries() {
+                return false;
+            }
+        };
+        Subscriptions subscriptions = new Subscriptions(List.of(subscription));
+        Publisher publisher = publisher(new RecordingClient(Receipt.NACK), 60_000, storesNoRetries);
+
+        CompletableFuture<IdWithReceipts> first = publisher.publish(subscriptions, List.of(event("u1")));
+        CompletableFuture<IdWithReceipts> second = publisher.publish(subscriptions, List.of(event("u1")));
+
+        assertThat(second.orTimeout(5, TimeUnit.SECONDS).join().idWithReceipts())
+                .extracting(IdWithReceipts.IdWithReceipt::receipt).containsExactly(Receipt.UNKNOWN);
+        assertThat(first).isCompleted();
+        publisher.close();
+    }
+
+    @Test
+    void blocked_retry_claim_does_not_hold_back_coalesced_sends() {
+        CountDownLatch claimsBlocked = new CountDownLatch(1);
+        Set<String> claimingThreads = ConcurrentHashMap.newKeySet();
+        EmbeddedDatabase slowClaims = new EmbeddedDatabase() {
+            @Override
+            public List<PendingRetry> claimDueRetries(int limit, Duration lease) {
+                claimingThreads.add(Thread.currentThread().getName());
+                try {
+                    claimsBlocked.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.claimDueRetries(limit, lease);
+            }
+        };
+        slowClaims.addSubscription(subscription);
+        RecordingClient nacking = new RecordingClient(Receipt.NACK);
+        Publisher publisher = new Publisher(new Sender(List.of(nacking)), new RetryQueue(), policies(10), slowClaims,
+                null, 10, Duration.ofMillis(20), Publisher.DEFAULT_MAX_IN_FLIGHT, null);
+        Subscriptions subscriptions = new Subscriptions(List.of(subscription));
+
+        publisher.send(subscriptions, List.of(event("b1")));
+        await().atMost(Duration.ofSeconds(5)).until(() -> claimingThreads.size() == 2);
+        publisher.send(subscriptions, List.of(event("b2")));
+
+        await().atMost(Duration.ofSeconds(2)).until(() -> nacking.received.contains("b2_" + SUB_ID));
+        claimsBlocked.countDown();
+        publisher.close();
+    }
+
+    @Test
+    void empty_retry_claims_back_off() throws InterruptedException {
+        AtomicInteger claims = new AtomicInteger();
+        EmbeddedDatabase countingClaims = new EmbeddedDatabase() {
+            @Override
+            public List<PendingRetry> claimDueRetries(int limit, Duration lease) {
+                claims.incrementAndGet();
+                return super.claimDueRetries(limit, lease);
+            }
+        };
+        Publisher publisher = publisher(new RecordingClient(Receipt.ACK), 300, countingClaims);
+
+        // Claims at 0, 0.5 and 1.5 s, where a fixed wait claims every 0.5 s
+        Thread.sleep(2500);
+        publisher.close();
+
+        assertThat(claims).hasValueBetween(2, 3);
+    }
+
+    private Publisher publisher(Client client, int waitInMs) {
+        return publisher(client, waitInMs, database);
+    }
+
+    private Publisher publisher(Client client, int waitInMs, EmbeddedDatabase database) {
+        return new Publisher(new Sender(List.of(client)), new RetryQueue(), policies(waitInMs), database);
+    }
+
+    private static RetryPolicies policies(int waitInMs) {
+        return new RetryPolicies(List.of(RetryPolicies.RetryPolicy.newBuilder()
+                .withForRetryAttempt(0, 5)
+                .withWaitInMs(waitInMs)
+                .withRetention(RetryPolicies.RetryPolicy.RetentionType.PERSISTENT)
+                .build()), List.of());
+    }
+
+    private static SpsEvent event(String id) {
+        return new BasicSpsEvents.BasicSpsEvent(TYPE, id, Map.of());
+    }
+
+    private static PendingRetry pending(String subId, String id, int retries) {
+        String payload = JsonProvider.json().write(new BasicSpsEvents(TYPE,
+                List.of(new BasicSpsEvents.BasicSpsEvent(TYPE, id, Map.of()))));
+        Instant now = Instant.now();
+        return new PendingRetry(id, TYPE, subId, payload, retries, DeliveryType.HTTP.name(), now,
+                now.minusSeconds(1), null);
+    }
+
+    private static class RecordingClient implements Client {
+        private final Receipt receipt;
+        private final List<String> received = new CopyOnWriteArrayList<>();
+
+        RecordingClient(Receipt receipt) {
+            this.receipt = receipt;
+        }
+
+        @Override
+        public CompletableFuture<IdWithReceiptsResult> post(Subscriptions.Subscription subscription,
+                                                           SpsEvents spsEvents) {
+            List<IdWithReceipts.IdWithReceipt> receipts = spsEvents.spsEvents().stream()
+                    .map(SpsEvent::id)
+                    .peek(received::add)
+                    .map(id -> new IdWithReceipts.IdWithReceipt(id, spsEvents.eventType(), receipt, Instant.now()))
+                    .toList();
+            return CompletableFuture.completedFuture(new IdWithReceiptsResult() {
+                @Override
+                public Receipt allEvents() {
+                    return receipt;
+                }
+
+                @Override
+                public List<IdWithReceipts.IdWithReceipt> idWithReceipts() {
+                    return receipts;
+                }
+            });
+        }
+
+        @Override
+        public EnumSet<DeliveryType> supports() {
+            return EnumSet.of(DeliveryType.HTTP);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.Client;
+import com.kildeen.sps.IdWithReceipts;
+import com.kildeen.sps.IdWithReceiptsResult;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.TestInit;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.awaitility.Awaitility.await;
+
+class PublishAsyncTest {
+
+    private static final String TYPE = "publish_async_01";
+
+    static {
+        TestInit.init();
+    }
+
+    private final EmbeddedDatabase database = new EmbeddedDatabase();
+
+    @Test
+    void completes_with_one_receipt_per_event_and_subscriber() {
+        subscribe("async_a");
+        subscribe("async_b");
+        Publish publish = builder(new StubClient(id -> id.startsWith("n") ? Receipt.NACK : Receipt.ACK))
+                .withRetryPolicies(new RetryPolicies(List.of(), List.of()))
+                .build();
+
+        IdWithReceipts receipts = publish.publishAsync(List.of(event("a1"), event("n1")))
+                .orTimeout(5, TimeUnit.SECONDS).join();
+
+        assertThat(receipts.idWithReceipts())
+                .extracting(IdWithReceipts.IdWithReceipt::id, IdWithReceipts.IdWithReceipt::receipt)
+                .containsExactlyInAnyOrder(
+                        tuple("a1_async_a", Receipt.ACK),
+                        tuple("a1_async_b", Receipt.ACK),
+                        tuple("n1_async_a", Receipt.NACK),
+                        tuple("n1_async_b", Receipt.NACK));
+    }
+
+    @Test
+    void producer_blocks_while_the_in_flight_window_is_full() throws InterruptedException {
+        subscribe("async_c");
+        StubClient client = new StubClient(id -> Receipt.ACK);
+        client.hold = true;
+        Publish publish = builder(client).withMaxInFlight(2).build();
+
+        CompletableFuture<IdWithReceipts> first = publish.publishAsync(List.of(event("w1"), event("w2")));
+        Thread producer = Thread.ofVirtual().start(() -> publish.publishAsync(List.of(event("w3"))));
+        producer.join(200);
+
+        assertThat(producer.isAlive()).isTrue();
+        assertThat(client.posted).containsExactly(List.of("w1_async_c", "w2_async_c"));
+
+        client.release();
+        first.orTimeout(5, TimeUnit.SECONDS).join();
+        producer.join(5000);
+
+        assertThat(producer.isAlive()).isFalse();
+        await().atMost(Duration.ofSeconds(5)).until(() -> client.posted.size() == 2);
+    }
+
+    @Test
+    void synchronous_publish_does_not_wait_for_the_in_flight_window() throws InterruptedException {
+        subscribe("async_d");
+        StubClient client = new StubClient(id -> Receipt.ACK);
+        client.hold = true;
+        Publish publish = builder(client).withMaxInFlight(1).build();
+        publish.publishAsync(List.of(event("f1")));
+
+        Thread producer = Thread.ofVirtual().start(() -> publish.publish(List.of(event("f2"))));
+        producer.join(5000);
+
+        assertThat(producer.isAlive()).isFalse();
+        assertThat(client.posted).containsExactly(List.of("f1_async_d"), List.of("f2_async_d"));
+        client.release();
+    }
+
+    @Test
+    void implementations_of_only_publish_still_compile_and_fail_clearly() {
+        Publish legacy = events -> Publish.PublishResult.PUBLISH;
+
+        assertThat(legacy.publishAsync(List.of(event("l1")))).isCompletedExceptionally();
+        assertThatThrownBy(() -> legacy.subscriber(10, Duration.ZERO))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    private void subscribe(String subId) {
+        database.addSubscription(new Subscriptions.Subscription(
+                new Subscriptions.Subscription.Subscriber(subId, "http://" + subId), TYPE, Map.of()));
+    }
+
+    private PublishService.Builder builder(Client client) {
+        return PublishService.newBuilder()
+                .withDatabase(database)
+                .withSubscriptionCache(Duration.ZERO, 1)
+                .withClient(client);
+    }
+
+    private static SpsEvent event(String id) {
+        return new BasicSpsEvents.BasicSpsEvent(TYPE, id, Map.of());
+    }
+
+    private static class StubClient implements Client {
+        private final Function<String, Receipt> receipts;
+        private final List<List<String>> posted = new CopyOnWriteArrayList<>();
+        private final List<CompletableFuture<IdWithReceiptsResult>> held = new CopyOnWriteArrayList<>();
+        private final List<IdWithReceiptsResult> heldResults = new CopyOnWriteArrayList<>();
+        private volatile boolean hold;
+
+        StubClient(Function<String, Receipt> receipts) {
+            this.receipts = receipts;
+        }
+
+        @Override
+        public CompletableFuture<IdWithReceiptsResult> post(Subscriptions.Subscription subscription,
+                                                           SpsEvents spsEvents) {
+            List<String> ids = spsEvents.spsEvents().stream().map(SpsEvent::id).toList();
+            posted.add(ids);
+            List<IdWithReceipts.IdWithReceipt> result = ids.stream()
+                    .map(id -> new IdWithReceipts.IdWithReceipt(id, spsEvents.eventType(), receipts.apply(id),
+                            Instant.now()))
+                    .toList();
+            IdWithReceiptsResult response = () -> result;
+            if (!hold) {
+                return CompletableFuture.completedFuture(response);
+            }
+            CompletableFuture<IdWithReceiptsResult> future = new CompletableFuture<>();
+            held.add(future);
+            heldResults.add(response);
+            return future;
+        }
+
+        void release() {
+            hold = false;
+            for (int i = 0; i < held.size(); i++) {
+                held.get(i).complete(heldResults.get(i));
+            }
+        }
+
+        @Override
+        public EnumSet<DeliveryType> supports() {
+            return EnumSet.of(DeliveryType.HTTP);
+        }
+    }
+}
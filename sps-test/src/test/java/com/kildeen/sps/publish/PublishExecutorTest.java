@@ -0,0 +1,116 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.ConfigurationException;
+import com.kildeen.sps.IdWithReceipts;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.TestInit;
+import com.kildeen.sps.persistence.TransportEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PublishExecutorTest {
+
+    private static final String TYPE = "publish_executor_01";
+
+    static {
+        TestInit.init();
+    }
+
+    private final List<Boolean> insertedOnVirtualThread = new CopyOnWriteArrayList<>();
+    private final EmbeddedDatabase database = new EmbeddedDatabase() {
+        @Override
+        public void insertTransportEvents(List<TransportEvent> events) {
+            insertedOnVirtualThread.add(Thread.currentThread().isVirtual());
+            super.insertTransportEvents(events);
+        }
+    };
+
+    @Test
+    void virtual_threads_run_the_default_clients() {
+        subscribe("executor_a");
+        PublishService publish = PublishService.newBuilder()
+                .withDatabase(database)
+                .withVirtualThreads()
+                .build();
+
+        IdWithReceipts receipts = publish.publishAsync(List.of(new BasicSpsEvents.BasicSpsEvent(TYPE, "v1", Map.of())))
+                .orTimeout(10, TimeUnit.SECONDS).join();
+
+        assertThat(receipts.idWithReceipts()).extracting(IdWithReceipts.IdWithReceipt::receipt)
+                .containsExactly(Receipt.ACK);
+        assertThat(insertedOnVirtualThread).containsExactly(true);
+    }
+
+    @Test
+    void supplied_executor_runs_the_default_clients() {
+        subscribe("executor_b");
+        AtomicInteger tasks = new AtomicInteger();
+        Executor virtual = Executors.newVirtualThreadPerTaskExecutor();
+        PublishService publish = PublishService.newBuilder()
+                .withDatabase(database)
+                .withExecutor(task -> {
+                    tasks.incrementAndGet();
+                    virtual.execute(task);
+                })
+                .build();
+
+        publish.publishAsync(List.of(new BasicSpsEvents.BasicSpsEvent(TYPE, "s1", Map.of())))
+                .orTimeout(10, TimeUnit.SECONDS).join();
+
+        assertThat(tasks).hasPositiveValue();
+        assertThat(database.pollTransportQueue("executor_b", 10)).hasSize(1);
+    }
+
+    @Test
+    void close_shuts_down_the_executors_the_service_created() {
+        PublishService virtual = PublishService.newBuilder().withDatabase(database).withVirtualThreads().build();
+        PublishService pooled = PublishService.newBuilder().withDatabase(database).build();
+
+        virtual.close();
+        pooled.close();
+
+        assertThat(virtual.ownedExecutors()).hasSize(1).allMatch(ExecutorService::isTerminated);
+        assertThat(pooled.ownedExecutors()).hasSize(1).allMatch(ExecutorService::isTerminated);
+    }
+
+    @Test
+    void close_leaves_a_supplied_executor_running() {
+        ExecutorService supplied = Executors.newSingleThreadExecutor();
+        PublishService publish = PublishService.newBuilder().withDatabase(database).withExecutor(supplied).build();
+
+        publish.close();
+
+        assertThat(publish.ownedExecutors()).isEmpty();
+        assertThat(supplied.isShutdown()).isFalse();
+        supplied.shutdown();
+    }
+
+    @Test
+    void virtual_threads_and_an_executor_are_exclusive() {
+        assertThatThrownBy(() -> PublishService.newBuilder()
+                .withDatabase(database)
+                .withVirtualThreads()
+                .withExecutor(Runnable::run)
+                .build())
+                .isInstanceOf(ConfigurationException.class);
+    }
+
+    private void subscribe(String subId) {
+        // Nothing listens on port 1, HTTP fails right away and delivery falls back to the database client
+        database.addSubscription(new Subscriptions.Subscription(
+                new Subscriptions.Subscription.Subscriber(subId, "http://localhost:1"), TYPE, Map.of()));
+    }
+}
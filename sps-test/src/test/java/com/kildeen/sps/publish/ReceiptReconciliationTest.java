@@ -0,0 +1,129 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.AllEventsResult;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.Client;
+import com.kildeen.sps.IdWithReceipts;
+import com.kildeen.sps.IdWithReceiptsResult;
+import com.kildeen.sps.IndexedReceipts;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.TestInit;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReceiptReconciliationTest {
+
+    private static final String TYPE = "receipt_reconciliation_01";
+    private static final int EVENTS = 2000;
+
+    static {
+        TestInit.init();
+    }
+
+    private final EmbeddedDatabase database = new EmbeddedDatabase();
+    private final AtomicInteger indexed = new AtomicInteger();
+
+    @Test
+    void receipts_in_send_order_are_matched_by_position() {
+        IdWithReceipts receipts = publish(spsEvents -> counting(receipts(spsEvents)));
+
+        assertPartiallyNacked(receipts);
+        assertThat(indexed).hasValue(0);
+    }
+
+    @Test
+    void receipts_out_of_order_are_indexed_once() {
+        IdWithReceipts receipts = publish(spsEvents -> {
+            List<IdWithReceipts.IdWithReceipt> reversed = new ArrayList<>(receipts(spsEvents));
+            Collections.reverse(reversed);
+            return counting(reversed);
+        });
+
+        assertPartiallyNacked(receipts);
+        assertThat(indexed).hasValue(1);
+    }
+
+    @Test
+    void nack_for_all_events_completes_every_event() {
+        IdWithReceipts receipts = publish(spsEvents -> AllEventsResult.NACK);
+
+        assertThat(receipts.idWithReceipts()).hasSize(EVENTS)
+                .allMatch(receipt -> receipt.receipt() == Receipt.NACK);
+    }
+
+    private IdWithReceipts publish(Function<SpsEvents, IdWithReceiptsResult> respond) {
+        database.addSubscription(new Subscriptions.Subscription(
+                new Subscriptions.Subscription.Subscriber("reconcile_sub", "http://reconcile"), TYPE, Map.of()));
+        Publish publish = PublishService.newBuilder()
+                .withDatabase(database)
+                .withSubscriptionCache(Duration.ZERO, 1)
+                .withRetryPolicies(new RetryPolicies(List.of(), List.of()))
+                .withClient(new Client() {
+                    @Override
+                    public CompletableFuture<IdWithReceiptsResult> post(Subscriptions.Subscription subscription,
+                                                                       SpsEvents spsEvents) {
+                        return CompletableFuture.completedFuture(respond.apply(spsEvents));
+                    }
+
+                    @Override
+                    public EnumSet<DeliveryType> supports() {
+                        return EnumSet.of(DeliveryType.HTTP);
+                    }
+                })
+                .build();
+
+        List<SpsEvent> events = new ArrayList<>(EVENTS);
+        for (int i = 0; i < EVENTS; i++) {
+            events.add(new BasicSpsEvents.BasicSpsEvent(TYPE, "r" + i, Map.of()));
+        }
+        return publish.publishAsync(events).orTimeout(10, TimeUnit.SECONDS).join();
+    }
+
+    private static List<IdWithReceipts.IdWithReceipt> receipts(SpsEvents spsEvents) {
+        Instant now = Instant.now();
+        return spsEvents.spsEvents().stream()
+                .map(e -> new IdWithReceipts.IdWithReceipt(e.id(), e.type(),
+                        nacked(e.id()) ? Receipt.NACK : Receipt.ACK, now))
+                .toList();
+    }
+
+    private IdWithReceiptsResult counting(List<IdWithReceipts.IdWithReceipt> receipts) {
+        return new IdWithReceiptsResult() {
+            @Override
+            public List<IdWithReceipts.IdWithReceipt> idWithReceipts() {
+                return receipts;
+            }
+
+            @Override
+            public IdWithReceiptsResult indexed() {
+                indexed.incrementAndGet();
+                return new IndexedReceipts(receipts);
+            }
+        };
+    }
+
+    private static void assertPartiallyNacked(IdWithReceipts receipts) {
+        assertThat(receipts.idWithReceipts()).hasSize(EVENTS)
+                .allMatch(receipt -> receipt.receipt() == (nacked(receipt.id()) ? Receipt.NACK : Receipt.ACK));
+    }
+
+    private static boolean nacked(String forkedId) {
+        return Integer.parseInt(forkedId.substring(1, forkedId.indexOf('_'))) % 7 == 0;
+    }
+}
@@ -0,0 +1,182 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.embeddeddb.EmbeddedDatabase;
+import com.kildeen.sps.AllEventsResult;
+import com.kildeen.sps.BasicSpsEvents;
+import com.kildeen.sps.Client;
+import com.kildeen.sps.IdWithReceipts;
+import com.kildeen.sps.IdWithReceiptsResult;
+import com.kildeen.sps.Receipt;
+import com.kildeen.sps.SpsEvent;
+import com.kildeen.sps.SpsEvents;
+import com.kildeen.sps.TestInit;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class StreamPublishTest {
+
+    private static final String ORDERS = "stream_orders_01";
+    private static final String PAYMENTS = "stream_payments_01";
+
+    static {
+        TestInit.init();
+    }
+
+    private final EmbeddedDatabase database = new EmbeddedDatabase();
+    private final List<SpsEvents> posted = new CopyOnWriteArrayList<>();
+
+    @Test
+    void streamed_events_are_published_in_batches_per_type() {
+        subscribe(ORDERS);
+        subscribe(PAYMENTS);
+        StreamPublisher subscriber = publishService().subscriber(50, Duration.ofMinutes(1));
+
+        try (SubmissionPublisher<SpsEvent> source = new SubmissionPublisher<>()) {
+            source.subscribe(subscriber);
+            for (int i = 0; i < 250; i++) {
+                source.submit(event(i % 2 == 0 ? ORDERS : PAYMENTS, "e" + i));
+            }
+        }
+        subscriber.completion().orTimeout(5, TimeUnit.SECONDS).join();
+
+        assertThat(posted).allSatisfy(events -> assertThat(events.spsEvents())
+                .allMatch(e -> e.type().equals(events.eventType())));
+        assertThat(posted).allSatisfy(events -> assertThat(events.spsEvents()).hasSizeLessThanOrEqualTo(50));
+        assertThat(posted.stream().mapToInt(events -> events.spsEvents().size()).sum()).isEqualTo(250);
+    }
+
+    @Test
+    void demand_never_runs_ahead_of_what_has_been_published() {
+        subscribe(ORDERS);
+        StreamPublisher subscriber = publishService().subscriber(10, Duration.ofMinutes(1));
+        AtomicLong requested = new AtomicLong();
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                requested.addAndGet(n);
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+
+        assertThat(requested).hasValue(10);
+        for (int i = 0; i < 9; i++) {
+            subscriber.onNext(event(ORDERS, "d" + i));
+        }
+        assertThat(requested).hasValue(10);
+        assertThat(posted).isEmpty();
+
+        subscriber.onNext(event(ORDERS, "d9"));
+        assertThat(requested).hasValue(20);
+        assertThat(posted).hasSize(1);
+    }
+
+    @Test
+    void partial_batch_is_published_after_the_delay() {
+        subscribe(ORDERS);
+        StreamPublisher subscriber = publishService().subscriber(100, Duration.ofMillis(50));
+        SubmissionPublisher<SpsEvent> source = new SubmissionPublisher<>();
+        source.subscribe(subscriber);
+
+        source.submit(event(ORDERS, "p1"));
+        source.submit(event(ORDERS, "p2"));
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> posted.size() == 1);
+        assertThat(posted.getFirst().spsEvents()).extracting(SpsEvent::id)
+                .containsExactly("p1_stream_sub", "p2_stream_sub");
+        source.close();
+        subscriber.completion().orTimeout(5, TimeUnit.SECONDS).join();
+    }
+
+    @Test
+    void delayed_batch_waiting_for_room_does_not_block_the_stream() throws InterruptedException {
+        subscribe(ORDERS);
+        List<CompletableFuture<IdWithReceiptsResult>> unanswered = new CopyOnWriteArrayList<>();
+        PublishService service = publishService(1, spsEvents -> {
+            CompletableFuture<IdWithReceiptsResult> answer = new CompletableFuture<>();
+            unanswered.add(answer);
+            return answer;
+        });
+        StreamPublisher subscriber = service.subscriber(10, Duration.ofMillis(20));
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+
+        subscriber.onNext(event(ORDERS, "w1"));
+        await().atMost(Duration.ofSeconds(5)).until(() -> posted.size() == 1);
+        // Flushed after the delay, then waits for the window that w1 fills
+        subscriber.onNext(event(ORDERS, "w2"));
+        Thread.sleep(100);
+
+        CompletableFuture.runAsync(() -> subscriber.onNext(event(ORDERS, "w3")))
+                .orTimeout(2, TimeUnit.SECONDS).join();
+
+        unanswered.getFirst().complete(AllEventsResult.ACK);
+        await().atMost(Duration.ofSeconds(5)).until(() -> posted.size() == 2);
+        unanswered.get(1).complete(AllEventsResult.ACK);
+        service.close();
+    }
+
+    private void subscribe(String eventType) {
+        database.addSubscription(new Subscriptions.Subscription(
+                new Subscriptions.Subscription.Subscriber("stream_sub", "http://stream"), eventType, Map.of()));
+    }
+
+    private PublishService publishService() {
+        return publishService(Publisher.DEFAULT_MAX_IN_FLIGHT, spsEvents -> {
+            List<IdWithReceipts.IdWithReceipt> receipts = spsEvents.spsEvents().stream()
+                    .map(e -> new IdWithReceipts.IdWithReceipt(e.id(), e.type(), Receipt.ACK, Instant.now()))
+                    .toList();
+            return CompletableFuture.completedFuture(() -> receipts);
+        });
+    }
+
+    private PublishService publishService(int maxInFlight,
+                                          Function<SpsEvents, CompletableFuture<IdWithReceiptsResult>> respond) {
+        return PublishService.newBuilder()
+                .withDatabase(database)
+                .withSubscriptionCache(Duration.ZERO, 1)
+                .withMaxInFlight(maxInFlight)
+                .withClient(new Client() {
+                    @Override
+                    public CompletableFuture<IdWithReceiptsResult> post(Subscriptions.Subscription subscription,
+                                                                       SpsEvents spsEvents) {
+                        posted.add(spsEvents);
+                        return respond.apply(spsEvents);
+                    }
+
+                    @Override
+                    public EnumSet<DeliveryType> supports() {
+                        return EnumSet.of(DeliveryType.HTTP);
+                    }
+                })
+                .build();
+    }
+
+    private static SpsEvent event(String type, String id) {
+        return new BasicSpsEvents.BasicSpsEvent(type, id, Map.of());
+    }
+}
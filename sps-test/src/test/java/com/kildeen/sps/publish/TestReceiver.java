@@ -0,0 +1,104 @@
+package com.kildeen.sps.publish;
+
+import com.kildeen.sps.IdWithReceiptsResult;
+import com.kildeen.sps.SpsEvents;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A local HTTP receiver for the client tests. It records every request and answers with what the test's responder
+ * returns for it.
+ */
+final class TestReceiver implements AutoCloseable {
+
+    private final HttpServer server;
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+
+    private TestReceiver(Function<Request, Response> responder) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            Request request = new Request(exchange.getRequestHeaders().getFirst("Content-Type"),
+                    exchange.getRequestHeaders().getFirst("Content-Encoding"),
+                    exchange.getRequestBody().readAllBytes());
+            requests.add(request);
+            Response response = responder.apply(request);
+            if (response.acceptEncoding() != null) {
+                exchange.getResponseHeaders().add("Accept-Encoding", response.acceptEncoding());
+            }
+            if (response.body() == null) {
+                exchange.sendResponseHeaders(response.status(), -1);
+            } else {
+                byte[] bytes = response.body().getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(response.status(), bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    static TestReceiver start(Function<Request, Response> responder) throws IOException {
+        return new TestReceiver(responder);
+    }
+
+    List<Request> requests() {
+        return requests;
+    }
+
+    IdWithReceiptsResult post(HttpClient client, SpsEvents events) {
+        Subscriptions.Subscription subscription = new Subscriptions.Subscription(
+                new Subscriptions.Subscription.Subscriber("test_receiver_sub",
+                        "http://localhost:" + server.getAddress().getPort() + "/"), events.eventType(), Map.of());
+        return client.post(subscription, events).orTimeout(10, TimeUnit.SECONDS).join();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    record Request(String contentType, String contentEncoding, byte[] body) {
+
+        boolean gzipped() {
+            return "gzip".equals(contentEncoding);
+        }
+
+        /**
+         * The content coding of the body, identity when none is named.
+         */
+        String encoding() {
+            return contentEncoding == null ? "identity" : contentEncoding;
+        }
+    }
+
+    /**
+     * @param acceptEncoding sent as the Accept-Encoding header, null for none
+     * @param body           sent as UTF-8, null for none
+     */
+    record Response(int status, String acceptEncoding, String body) {
+
+        static final Response NO_CONTENT = new Response(204, null, null);
+
+        static Response status(int status, String body) {
+            return new Response(status, null, body);
+        }
+
+        /**
+         * 415 Unsupported Media Type, naming the content codings accepted when acceptEncoding is not null.
+         */
+        static Response unsupported(String acceptEncoding) {
+            return new Response(415, acceptEncoding, null);
+        }
+    }
+}